@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.hnsw.RandomVectorScorer;
+
+/**
+ * An index of 1-bit quantized vectors: each dimension is quantized to whether it is above the
+ * centroid of the vectors of the field, and the bits of a vector are packed into {@code ceil(dims
+ * / 64)} longs, 32 times smaller than the float vector. The codes are compared by their hamming
+ * distance, to select the candidates that are then rescored exactly against the raw vectors.
+ *
+ * <p>The index is the centroid, as {@code dims} floats, followed by the codes of the vectors.
+ * Quantizing around the centroid rather than 0 keeps the codes of vectors that are not centred,
+ * e.g. of non-negative components, from being all the same.
+ */
+/*package-private*/ final class BinaryQuantizedIndex {
+
+  private BinaryQuantizedIndex() {}
+
+  /** Returns the number of longs of the code of a vector of the given dimensions. */
+  static int numWords(int dims) {
+    return (dims + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  /** Returns the number of bytes of the centroid of vectors of the given dimensions. */
+  static long centroidBytes(int dims) {
+    return (long) dims * Float.BYTES;
+  }
+
+  /** Adds the given vector to the given per dimension sums, of the vectors of a centroid. */
+  static void addToSum(double[] sum, float[] vector) {
+    assert sum.length == vector.length;
+    for (int i = 0; i < vector.length; i++) {
+      sum[i] += vector[i];
+    }
+  }
+
+  /** Returns the centroid of the given number of vectors, of the given per dimension sums. */
+  static float[] centroid(double[] sum, int count) {
+    float[] centroid = new float[sum.length];
+    if (count > 0) {
+      for (int i = 0; i < sum.length; i++) {
+        centroid[i] = (float) (sum[i] / count);
+      }
+    }
+    return centroid;
+  }
+
+  /** Writes the given centroid, which must precede the codes quantized around it. */
+  static void writeCentroid(DataOutput out, float[] centroid) throws IOException {
+    for (float c : centroid) {
+      out.writeInt(Float.floatToIntBits(c));
+    }
+  }
+
+  /** Quantizes the given vector around the given centroid into the given code. */
+  static void quantize(float[] vector, float[] centroid, long[] code) {
+    assert code.length == numWords(vector.length);
+    assert centroid.length == vector.length;
+    for (int w = 0; w < code.length; w++) {
+      long word = 0L;
+      int start = w * Long.SIZE;
+      int end = Math.min(vector.length, start + Long.SIZE);
+      for (int i = start; i < end; i++) {
+        if (vector[i] > centroid[i]) {
+          word |= 1L << (i - start);
+        }
+      }
+      code[w] = word;
+    }
+  }
+
+  /** Quantizes and writes the given vector, with the given centroid and scratch code. */
+  static void writeCode(DataOutput out, float[] vector, float[] centroid, long[] code)
+      throws IOException {
+    quantize(vector, centroid, code);
+    for (long word : code) {
+      out.writeLong(word);
+    }
+  }
+
+  /**
+   * Returns a scorer of the codes of the given index, by the hamming distance to the target,
+   * quantized around the centroid of the index. The scores are in [0, 1], 1 for identical codes.
+   * The scorer maps ordinals to themselves, so that collectors collect the ordinals of the
+   * candidates.
+   */
+  static RandomVectorScorer scorer(IndexInput index, int count, float[] target)
+      throws IOException {
+    // read by position, as scorers of the same index may be created concurrently
+    RandomAccessInput in = index.randomAccessSlice(0L, index.length());
+    float[] centroid = new float[target.length];
+    for (int i = 0; i < centroid.length; i++) {
+      centroid[i] = Float.intBitsToFloat(in.readInt((long) i * Float.BYTES));
+    }
+    long[] query = new long[numWords(target.length)];
+    quantize(target, centroid, query);
+    long codesOffset = centroidBytes(target.length);
+    long codeBytes = (long) query.length * Long.BYTES;
+    float dims = target.length;
+    return new RandomVectorScorer() {
+      @Override
+      public float score(int ord) throws IOException {
+        long pos = codesOffset + ord * codeBytes;
+        int distance = 0;
+        for (int w = 0; w < query.length; w++, pos += Long.BYTES) {
+          distance += Long.bitCount(query[w] ^ in.readLong(pos));
+        }
+        return 1f - distance / dims;
+      }
+
+      @Override
+      public int maxOrd() {
+        return count;
+      }
+    };
+  }
+}
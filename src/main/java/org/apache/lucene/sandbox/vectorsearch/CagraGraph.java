@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.hnsw.HnswGraph;
+
+/**
+ * The fixed degree graph of a serialized CAGRA index, which can be searched on the CPU, as a
+ * single level {@link HnswGraph}. The neighbours are read in place, from the (memory mapped) index
+ * file, so the graph takes no heap.
+ *
+ * <p>cuVS serializes a CAGRA index as a sequence of numpy (npy) records: the version, size,
+ * dimensions, graph degree and metric scalars, followed by the graph, a {@code size x degree}
+ * array of 32 bits neighbour ordinals, and then the dataset.
+ */
+/*package-private*/ final class CagraGraph {
+
+  private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+  private static final Pattern NPY_DESCR = Pattern.compile("'descr':\\s*'([<>|=])([a-z])(\\d+)'");
+  private static final Pattern NPY_SHAPE = Pattern.compile("'shape':\\s*\\(([^)]*)\\)");
+
+  final int size;
+  final int dims;
+  final int degree;
+  private final long graphOffset; // within the serialized index
+
+  private CagraGraph(int size, int dims, int degree, long graphOffset) {
+    this.size = size;
+    this.dims = dims;
+    this.degree = degree;
+    this.graphOffset = graphOffset;
+  }
+
+  /** Reads the layout of the graph of the serialized CAGRA index, positioned at its start. */
+  static CagraGraph read(IndexInput in) throws IOException {
+    in.skipBytes(4); // the dtype of the dataset
+    readScalar(in); // serialization version
+    long size = readScalar(in);
+    long dims = readScalar(in);
+    long degree = readScalar(in);
+    readScalar(in); // metric
+
+    NpyHeader header = NpyHeader.read(in);
+    if (header.shape.length != 2
+        || header.shape[0] != size
+        || header.shape[1] != degree
+        || header.itemSize != Integer.BYTES) {
+      throw new CorruptIndexException("unexpected cagra graph: " + header, in);
+    }
+    return new CagraGraph(
+        Math.toIntExact(size),
+        Math.toIntExact(dims),
+        Math.toIntExact(degree),
+        in.getFilePointer());
+  }
+
+  /**
+   * Returns a view on the graph, for a single search, that reads the neighbours from the given
+   * input over the serialized index.
+   */
+  HnswGraph open(IndexInput in) throws IOException {
+    long length = (long) size * degree * Integer.BYTES;
+    return new GraphView(in.randomAccessSlice(graphOffset, length));
+  }
+
+  private final class GraphView extends HnswGraph {
+    private final RandomAccessInput neighbors;
+    private long rowStart; // the position of the neighbours of the current node
+    private long pos;
+    private int remaining;
+    private int neighborCount = -1; // of the current node, counted on first use
+
+    GraphView(RandomAccessInput neighbors) {
+      this.neighbors = neighbors;
+    }
+
+    @Override
+    public void seek(int level, int target) {
+      assert level == 0;
+      rowStart = (long) target * degree * Integer.BYTES;
+      pos = rowStart;
+      remaining = degree;
+      neighborCount = -1;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public int nextNeighbor() throws IOException {
+      // cuVS pads the neighbours of poorly connected nodes with invalid ordinals
+      while (remaining > 0) {
+        int neighbor = neighbors.readInt(pos);
+        pos += Integer.BYTES;
+        remaining--;
+        if (isValid(neighbor)) {
+          return neighbor;
+        }
+      }
+      return NO_MORE_DOCS;
+    }
+
+    /** The number of valid neighbours of the current node, without the padding. */
+    @Override
+    public int neighborCount() {
+      if (neighborCount < 0) {
+        int count = 0;
+        try {
+          for (int i = 0; i < degree; i++) {
+            if (isValid(neighbors.readInt(rowStart + (long) i * Integer.BYTES))) {
+              count++;
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        neighborCount = count;
+      }
+      return neighborCount;
+    }
+
+    private boolean isValid(int neighbor) {
+      return neighbor >= 0 && neighbor < size;
+    }
+
+    @Override
+    public int maxConn() {
+      return degree;
+    }
+
+    @Override
+    public int numLevels() {
+      return 1;
+    }
+
+    // CAGRA graphs have no hierarchy, the search starts at the node at the middle, as when
+    // cuVS exports the graph to hnswlib
+    @Override
+    public int entryNode() {
+      return size / 2;
+    }
+
+    @Override
+    public NodesIterator getNodesOnLevel(int level) {
+      assert level == 0;
+      return new ArrayNodesIterator(size);
+    }
+  }
+
+  private static long readScalar(IndexInput in) throws IOException {
+    NpyHeader header = NpyHeader.read(in);
+    if (header.shape.length != 0) {
+      throw new CorruptIndexException("expected a scalar, got: " + header, in);
+    }
+    return switch (header.itemSize) {
+      case 1 -> in.readByte() & 0xFFL;
+      case 2 -> in.readShort() & 0xFFFFL;
+      case 4 -> in.readInt() & 0xFFFFFFFFL;
+      case 8 -> in.readLong();
+      default -> throw new CorruptIndexException("unexpected scalar: " + header, in);
+    };
+  }
+
+  /** The header of a numpy record: the element type and the shape of the array. */
+  private record NpyHeader(char byteOrder, char kind, int itemSize, long[] shape) {
+
+    static NpyHeader read(IndexInput in) throws IOException {
+      for (byte b : NPY_MAGIC) {
+        if (in.readByte() != b) {
+          throw new CorruptIndexException("expected a numpy record", in);
+        }
+      }
+      int major = in.readByte();
+      in.readByte(); // minor
+      int headerLength = major == 1 ? in.readShort() & 0xFFFF : in.readInt();
+      byte[] bytes = new byte[headerLength];
+      in.readBytes(bytes, 0, headerLength);
+      String dict = new String(bytes, StandardCharsets.US_ASCII);
+
+      Matcher descr = NPY_DESCR.matcher(dict);
+      Matcher shape = NPY_SHAPE.matcher(dict);
+      if (descr.find() == false || shape.find() == false) {
+        throw new CorruptIndexException("invalid numpy header: " + dict.strip(), in);
+      }
+      char byteOrder = descr.group(1).charAt(0);
+      if (byteOrder == '>') {
+        throw new CorruptIndexException("big endian numpy record: " + dict.strip(), in);
+      }
+      String[] dims = shape.group(1).split(",");
+      int numDims = 0;
+      long[] shapeDims = new long[dims.length];
+      for (String dim : dims) {
+        if (dim.isBlank() == false) {
+          shapeDims[numDims++] = Long.parseLong(dim.strip());
+        }
+      }
+      return new NpyHeader(
+          byteOrder,
+          descr.group(2).charAt(0),
+          Integer.parseInt(descr.group(3)),
+          Arrays.copyOf(shapeDims, numDims));
+    }
+
+    @Override
+    public String toString() {
+      return "npy(" + byteOrder + kind + itemSize + ", " + Arrays.toString(shape) + ")";
+    }
+  }
+}
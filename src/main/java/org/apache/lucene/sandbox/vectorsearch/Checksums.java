@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.search.TaskExecutor;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MemorySegmentAccessInput;
+
+/**
+ * Verifies the checksums of large files, by computing the CRC32 of regions of the file
+ * concurrently, and combining them, as zlib's {@code crc32_combine}.
+ */
+/*package-private*/ final class Checksums {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final long MAX_BYTE_BUFFER_SIZE = 1L << 30;
+
+  private Checksums() {}
+
+  /**
+   * Verifies the checksum of the whole file, like {@link CodecUtil#checksumEntireFile}, with one
+   * task per region. The regions are given by the sorted {@code boundaries}, the offsets at which
+   * the file is split; boundaries out of the checksummed part of the file are ignored.
+   */
+  static void checksumEntireFile(IndexInput input, long[] boundaries, TaskExecutor executor)
+      throws IOException {
+    IndexInput clone = input.clone();
+    long expected = CodecUtil.retrieveChecksum(clone);
+    // the checksum covers the file up to the checksum itself, i.e. the footer magic and algorithm
+    long end = clone.length() - Long.BYTES;
+
+    List<Long> starts = new ArrayList<>();
+    starts.add(0L);
+    for (long boundary : boundaries) {
+      if (boundary > starts.getLast() && boundary < end) {
+        starts.add(boundary);
+      }
+    }
+    List<Callable<Long>> tasks = new ArrayList<>(starts.size());
+    for (int i = 0; i < starts.size(); i++) {
+      long start = starts.get(i);
+      long length = (i + 1 < starts.size() ? starts.get(i + 1) : end) - start;
+      // a clone per task, as inputs are not thread safe
+      IndexInput taskInput = input.clone();
+      tasks.add(() -> crc32(taskInput, start, length));
+    }
+    List<Long> crcs = executor.invokeAll(tasks);
+
+    long actual = crcs.get(0);
+    for (int i = 1; i < crcs.size(); i++) {
+      long length = (i + 1 < starts.size() ? starts.get(i + 1) : end) - starts.get(i);
+      actual = combine(actual, crcs.get(i), length);
+    }
+    if (actual != expected) {
+      throw new CorruptIndexException(
+          "checksum failed (hardware problem?) : expected="
+              + Long.toHexString(expected)
+              + " actual="
+              + Long.toHexString(actual),
+          input);
+    }
+  }
+
+  /** Returns the CRC32 of the given region of the input, which is not modified. */
+  static long crc32(IndexInput input, long offset, long length) throws IOException {
+    CRC32 crc = new CRC32();
+    try (IndexInput slice = input.slice("checksum", offset, length)) {
+      if (slice instanceof MemorySegmentAccessInput msai) {
+        MemorySegment segment = msai.segmentSliceOrNull(0L, length);
+        if (segment != null) {
+          // checksums the mapped memory in place
+          for (long pos = 0; pos < length; pos += MAX_BYTE_BUFFER_SIZE) {
+            long size = Math.min(MAX_BYTE_BUFFER_SIZE, length - pos);
+            crc.update(segment.asSlice(pos, size).asByteBuffer());
+          }
+          return crc.getValue();
+        }
+      }
+      byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, length)];
+      for (long remaining = length; remaining > 0; ) {
+        int n = (int) Math.min(buffer.length, remaining);
+        slice.readBytes(buffer, 0, n);
+        crc.update(buffer, 0, n);
+        remaining -= n;
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * Returns the CRC32 of the concatenation of two blocks, given their CRC32s and the length of the
+   * second one, as zlib's {@code crc32_combine}.
+   */
+  static long combine(long crc1, long crc2, long length2) {
+    if (length2 <= 0) {
+      return crc1;
+    }
+    long[] even = new long[32]; // the operator for an even power of two zeros
+    long[] odd = new long[32]; // the operator for an odd power of two zeros
+
+    // the operator for one zero bit
+    odd[0] = 0xEDB88320L; // CRC32 polynomial
+    long row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    square(even, odd); // two zero bits
+    square(odd, even); // four zero bits
+
+    // apply length2 zeros to crc1, the first squaring gives the operator for one zero byte
+    do {
+      square(even, odd);
+      if ((length2 & 1) != 0) {
+        crc1 = times(even, crc1);
+      }
+      length2 >>= 1;
+      if (length2 == 0) {
+        break;
+      }
+      square(odd, even);
+      if ((length2 & 1) != 0) {
+        crc1 = times(odd, crc1);
+      }
+      length2 >>= 1;
+    } while (length2 != 0);
+    return crc1 ^ crc2;
+  }
+
+  private static long times(long[] matrix, long vector) {
+    long sum = 0;
+    for (int i = 0; vector != 0; i++, vector >>>= 1) {
+      if ((vector & 1) != 0) {
+        sum ^= matrix[i];
+      }
+    }
+    return sum;
+  }
+
+  private static void square(long[] square, long[] matrix) {
+    for (int n = 0; n < 32; n++) {
+      square[n] = times(matrix, matrix[n]);
+    }
+  }
+}
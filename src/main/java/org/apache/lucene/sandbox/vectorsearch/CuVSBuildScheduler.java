@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.lucene.util.IOSupplier;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Schedules the builds of the GPU indices of all the writers of the process. Builds are queued,
+ * and admitted when their estimated device memory fits in the memory budget, and fewer than the
+ * maximum number of builds are running. Builds of flushed segments are admitted before those of
+ * merged segments, as flushes hold up indexing while merges run in the background; builds of the
+ * same priority are admitted in order. A build estimated larger than the budget is admitted when
+ * no other build is running.
+ *
+ * <p>The depth of the queue, and how long builds waited to be admitted, are exposed for
+ * monitoring.
+ *
+ * @see CuVSVectorsFormat#setBuildScheduler(CuVSBuildScheduler)
+ */
+public final class CuVSBuildScheduler {
+
+  /** The priority of a build, flushes are admitted before merges. */
+  public enum Priority {
+    /** The build of a flushed segment. */
+    FLUSH,
+    /** The build of a merged segment. */
+    MERGE
+  }
+
+  // A queued build, ordered by priority, and then by arrival
+  private record Ticket(Priority priority, long seq, long bytes) implements Comparable<Ticket> {
+    @Override
+    public int compareTo(Ticket other) {
+      int cmp = priority.compareTo(other.priority);
+      return cmp != 0 ? cmp : Long.compare(seq, other.seq);
+    }
+  }
+
+  private final long memoryBudgetBytes;
+  private final int maxConcurrentBuilds;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+  private long nextSeq;
+  private long reservedBytes;
+  private int activeBuilds;
+  private long admittedBuilds;
+  private long totalWaitNanos;
+  private long maxWaitNanos;
+
+  /**
+   * Creates a scheduler of the given device memory budget, in bytes, and maximum number of
+   * concurrent builds.
+   */
+  public CuVSBuildScheduler(long memoryBudgetBytes, int maxConcurrentBuilds) {
+    if (memoryBudgetBytes < 1) {
+      throw new IllegalArgumentException(
+          "memoryBudgetBytes must be at least 1, got: " + memoryBudgetBytes);
+    }
+    if (maxConcurrentBuilds < 1) {
+      throw new IllegalArgumentException(
+          "maxConcurrentBuilds must be at least 1, got: " + maxConcurrentBuilds);
+    }
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.maxConcurrentBuilds = maxConcurrentBuilds;
+  }
+
+  /** Returns a scheduler that admits all the builds immediately. */
+  public static CuVSBuildScheduler unbounded() {
+    return new CuVSBuildScheduler(Long.MAX_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns a rough estimate of the device memory needed to build the indices of the given number
+   * of vectors: the dataset, and the intermediate and final graphs of a Cagra index.
+   */
+  static long estimateBuildBytes(int size, int dims, int intGraphDegree, int graphDegree) {
+    long bytesPerVector =
+        (long) dims * Float.BYTES + (long) (intGraphDegree + graphDegree) * Integer.BYTES;
+    return size * bytesPerVector;
+  }
+
+  /**
+   * Runs the given build, once admitted, on the calling thread.
+   *
+   * @param priority the priority of the build
+   * @param estimatedBytes the estimated device memory of the build
+   * @param build the build
+   */
+  <T> T run(Priority priority, long estimatedBytes, IOSupplier<T> build) throws IOException {
+    long bytes = Math.min(Math.max(0L, estimatedBytes), memoryBudgetBytes);
+    admit(priority, bytes);
+    try {
+      return build.get();
+    } finally {
+      release(bytes);
+    }
+  }
+
+  private void admit(Priority priority, long bytes) {
+    long startTime = System.nanoTime();
+    lock.lock();
+    try {
+      Ticket ticket = new Ticket(priority, nextSeq++, bytes);
+      queue.add(ticket);
+      try {
+        while (queue.peek() != ticket || fits(bytes) == false) {
+          changed.await();
+        }
+      } catch (InterruptedException e) {
+        queue.remove(ticket);
+        changed.signalAll(); // the next build may now be at the head of the queue
+        throw new ThreadInterruptedException(e);
+      }
+      queue.poll();
+      reservedBytes += bytes;
+      activeBuilds++;
+      long waitNanos = System.nanoTime() - startTime;
+      admittedBuilds++;
+      totalWaitNanos += waitNanos;
+      maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+      changed.signalAll(); // the next build may fit too
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean fits(long bytes) {
+    return activeBuilds < maxConcurrentBuilds && bytes <= memoryBudgetBytes - reservedBytes;
+  }
+
+  private void release(long bytes) {
+    lock.lock();
+    try {
+      reservedBytes -= bytes;
+      activeBuilds--;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of builds waiting to be admitted. */
+  public int queueDepth() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of builds running. */
+  public int activeBuilds() {
+    lock.lock();
+    try {
+      return activeBuilds;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the estimated device memory of the running builds, in bytes. */
+  public long reservedBytes() {
+    lock.lock();
+    try {
+      return reservedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of builds admitted so far. */
+  public long admittedBuilds() {
+    lock.lock();
+    try {
+      return admittedBuilds;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns how long the admitted builds waited in total, in nanoseconds. */
+  public long totalWaitNanos() {
+    lock.lock();
+    try {
+      return totalWaitNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the longest wait of an admitted build, in nanoseconds. */
+  public long maxWaitNanos() {
+    lock.lock();
+    try {
+      return maxWaitNanos;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CuVSBuildScheduler(memoryBudgetBytes="
+        + memoryBudgetBytes
+        + ", maxConcurrentBuilds="
+        + maxConcurrentBuilds
+        + ")";
+  }
+}
@@ -23,24 +23,28 @@ import org.apache.lucene.index.DocsWithFieldSet;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.util.RamUsageEstimator;
 
-/** CuVS based fields writer */
-/*package-private*/ class CuVSFieldWriter extends KnnFieldVectorsWriter<float[]> {
+/**
+ * CuVS based fields writer, of float or byte vectors.
+ *
+ * @param <T> the type of the vectors
+ */
+/*package-private*/ class CuVSFieldWriter<T> extends KnnFieldVectorsWriter<T> {
 
   private static final long SHALLOW_SIZE =
       RamUsageEstimator.shallowSizeOfInstance(CuVSFieldWriter.class);
 
   private final FieldInfo fieldInfo;
-  private final FlatFieldVectorsWriter<float[]> flatFieldVectorsWriter;
+  private final FlatFieldVectorsWriter<T> flatFieldVectorsWriter;
   private int lastDocID = -1;
 
   public CuVSFieldWriter(
-      FieldInfo fieldInfo, FlatFieldVectorsWriter<float[]> flatFieldVectorsWriter) {
+      FieldInfo fieldInfo, FlatFieldVectorsWriter<T> flatFieldVectorsWriter) {
     this.fieldInfo = fieldInfo;
     this.flatFieldVectorsWriter = flatFieldVectorsWriter;
   }
 
   @Override
-  public void addValue(int docID, float[] vectorValue) throws IOException {
+  public void addValue(int docID, T vectorValue) throws IOException {
     if (docID == lastDocID) {
       throw new IllegalArgumentException(
           "VectorValuesField \""
@@ -50,7 +54,7 @@ import org.apache.lucene.util.RamUsageEstimator;
     flatFieldVectorsWriter.addValue(docID, vectorValue);
   }
 
-  List<float[]> getVectors() {
+  List<T> getVectors() {
     return flatFieldVectorsWriter.getVectors();
   }
 
@@ -63,7 +67,7 @@ import org.apache.lucene.util.RamUsageEstimator;
   }
 
   @Override
-  public float[] copyValue(float[] vectorValue) {
+  public T copyValue(T vectorValue) {
     throw new UnsupportedOperationException();
   }
 
@@ -19,6 +19,7 @@ import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsReader.handleThr
 
 import com.nvidia.cuvs.BruteForceIndex;
 import com.nvidia.cuvs.CagraIndex;
+import com.nvidia.cuvs.CuVSResources;
 import com.nvidia.cuvs.HnswIndex;
 import java.io.Closeable;
 import java.io.IOException;
@@ -29,6 +30,9 @@ public class CuVSIndex implements Closeable {
   private final CagraIndex cagraIndex;
   private final BruteForceIndex bruteforceIndex;
   private final HnswIndex hnswIndex;
+  private final CuVSResources resources; // the resources the indices are loaded with
+  private final CuVSResourcesPool pool; // the pool of the resources, or null
+  private final int slot; // the slot of the pool the indices are placed on
 
   private int maxDocs;
   private String fieldName;
@@ -50,12 +54,105 @@ public class CuVSIndex implements Closeable {
     }
     this.maxDocs = maxDocs;
     this.hnswIndex = null; // TODO:
+    this.resources = null;
+    this.pool = null;
+    this.slot = -1;
   }
 
   public CuVSIndex(CagraIndex cagraIndex, BruteForceIndex bruteforceIndex, HnswIndex hnswIndex) {
+    this(cagraIndex, bruteforceIndex, hnswIndex, null, null, -1);
+  }
+
+  /**
+   * Creates an index of the given indices, loaded with the given resources, of the given slot of
+   * the given pool if not null. The indices are then searched and destroyed under leases of the
+   * slot, and removed from the slot once destroyed.
+   */
+  public CuVSIndex(
+      CagraIndex cagraIndex,
+      BruteForceIndex bruteforceIndex,
+      HnswIndex hnswIndex,
+      CuVSResources resources,
+      CuVSResourcesPool pool,
+      int slot) {
     this.cagraIndex = cagraIndex;
     this.bruteforceIndex = bruteforceIndex;
     this.hnswIndex = hnswIndex;
+    this.resources = resources;
+    this.pool = pool;
+    this.slot = slot;
+  }
+
+  /** Loads an index onto the device, with the given resources, or returns null if none. */
+  @FunctionalInterface
+  interface IndexLoader<T> {
+    T load(CuVSResources resources) throws Throwable;
+  }
+
+  /**
+   * Loads the indices of a field with the given resources, or, with a pool, places them on a slot
+   * of the pool and loads them under a lease of the slot. If an index fails to load, the indices
+   * already loaded are destroyed, under the lease, and removed from the slot.
+   */
+  static CuVSIndex load(
+      CuVSResources resources,
+      CuVSResourcesPool pool,
+      IndexLoader<CagraIndex> cagraLoader,
+      IndexLoader<BruteForceIndex> bruteForceLoader,
+      IndexLoader<HnswIndex> hnswLoader)
+      throws IOException {
+    CagraIndex cagraIndex = null;
+    BruteForceIndex bruteForceIndex = null;
+    HnswIndex hnswIndex = null;
+    int slot = pool == null ? -1 : pool.placeIndex();
+    try (var lease = slot < 0 ? null : pool.acquire(slot)) {
+      if (lease != null) {
+        resources = lease.resources();
+      }
+      try {
+        cagraIndex = cagraLoader.load(resources);
+        bruteForceIndex = bruteForceLoader.load(resources);
+        hnswIndex = hnswLoader.load(resources);
+      } catch (Throwable t) {
+        destroyIndices(cagraIndex, bruteForceIndex, hnswIndex, t);
+        throw t;
+      }
+    } catch (Throwable t) {
+      if (slot >= 0) {
+        pool.removeIndex(slot);
+      }
+      handleThrowable(t);
+    }
+    return new CuVSIndex(cagraIndex, bruteForceIndex, hnswIndex, resources, pool, slot);
+  }
+
+  // Destroys the given indices that are not null, adding the failures to the given failure
+  private static void destroyIndices(
+      CagraIndex cagraIndex,
+      BruteForceIndex bruteForceIndex,
+      HnswIndex hnswIndex,
+      Throwable failure) {
+    try {
+      if (cagraIndex != null) {
+        cagraIndex.destroyIndex();
+      }
+    } catch (Throwable t) {
+      failure.addSuppressed(t);
+    }
+    try {
+      if (bruteForceIndex != null) {
+        bruteForceIndex.destroyIndex();
+      }
+    } catch (Throwable t) {
+      failure.addSuppressed(t);
+    }
+    try {
+      if (hnswIndex != null) {
+        hnswIndex.destroyIndex();
+      }
+    } catch (Throwable t) {
+      failure.addSuppressed(t);
+    }
   }
 
   public CagraIndex getCagraIndex() {
@@ -73,6 +170,19 @@ public class CuVSIndex implements Closeable {
     return hnswIndex;
   }
 
+  /** Returns the resources the indices are loaded with, or null if unknown. */
+  public CuVSResources getResources() {
+    return resources;
+  }
+
+  /**
+   * Leases the slot of the pool the indices are placed on, for the duration of a search, or
+   * returns null if they are not placed on a pool.
+   */
+  public CuVSResourcesPool.Lease acquireResources() {
+    return pool == null ? null : pool.acquire(slot);
+  }
+
   public String getFieldName() {
     return fieldName;
   }
@@ -97,7 +207,13 @@ public class CuVSIndex implements Closeable {
       return;
     }
     closed = true;
-    destroyIndices();
+    try (var lease = acquireResources()) {
+      destroyIndices();
+    } finally {
+      if (pool != null) {
+        pool.removeIndex(slot);
+      }
+    }
   }
 
   private void destroyIndices() throws IOException {
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.lucene.util.IOUtils;
+
+/**
+ * A process wide cache of the CuVS indices loaded on the device, bounded by a budget of bytes.
+ *
+ * <p>Indices are loaded on demand, when first searched, and the least recently searched ones are
+ * evicted, i.e. released from the device, when the total size of the loaded indices exceeds the
+ * budget. An evicted index is loaded again, from its segment file, the next time it is searched.
+ * Indices that are being searched are never evicted, so the budget may be temporarily exceeded.
+ *
+ * <p>The size of an index is estimated from the size of its serialized form, which holds the
+ * dataset and the graph copied to the device.
+ */
+public final class CuVSIndexCache {
+
+  private static volatile CuVSIndexCache instance;
+
+  private final long maxBytes;
+  private final ReentrantLock lock = new ReentrantLock();
+  // access ordered, the least recently searched entry first
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytesUsed; // guarded by lock
+  private long hits, misses, evictions; // guarded by lock
+
+  CuVSIndexCache(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("maxBytes must be positive, got: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Enables the process wide cache, with the given budget, or disables it when the budget is 0.
+   * Readers opened before the call keep using the cache, if any, that was enabled when they were
+   * opened.
+   */
+  static synchronized void configure(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("negative maxBytes: " + maxBytes);
+    }
+    instance = maxBytes == 0 ? null : new CuVSIndexCache(maxBytes);
+  }
+
+  /** Returns the process wide cache, or null if it is disabled. */
+  public static CuVSIndexCache getInstance() {
+    return instance;
+  }
+
+  /** Returns the budget of this cache, in bytes. */
+  public long maxBytes() {
+    return maxBytes;
+  }
+
+  /** Returns the total estimated size of the cached indices, in bytes. */
+  public long bytesUsed() {
+    lock.lock();
+    try {
+      return bytesUsed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of searches that found their index loaded. */
+  public long hitCount() {
+    lock.lock();
+    try {
+      return hits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of searches that had to load their index. */
+  public long missCount() {
+    lock.lock();
+    try {
+      return misses;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of indices evicted to stay within the budget. */
+  public long evictionCount() {
+    lock.lock();
+    try {
+      return evictions;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Acquires the index of the given owner and field, loading it if needed. The returned handle
+   * must be closed once the index is no longer used, to make it evictable again.
+   *
+   * @param owner the owner of the index, typically the reader of its segment
+   * @param fieldNumber the number of the field of the index
+   * @param sizeInBytes the estimated size of the index
+   * @param loader loads the index, if it is not cached
+   */
+  Handle acquire(Object owner, int fieldNumber, long sizeInBytes, LazyCuVSIndex.Loader loader)
+      throws IOException {
+    final Key key = new Key(owner, fieldNumber);
+    final Entry entry;
+    List<Entry> evicted;
+    lock.lock();
+    try {
+      Entry existing = entries.get(key);
+      if (existing == null) {
+        misses++;
+        entry = new Entry(key, sizeInBytes, new LazyCuVSIndex(loader));
+        entries.put(key, entry);
+        bytesUsed += sizeInBytes;
+      } else {
+        hits++;
+        entry = existing;
+      }
+      entry.refCount++;
+      evicted = evictIfNeeded();
+    } finally {
+      lock.unlock();
+    }
+    closeAll(evicted);
+
+    boolean success = false;
+    try {
+      Handle handle = new Handle(this, entry, entry.index.get());
+      success = true;
+      return handle;
+    } finally {
+      if (success == false) {
+        // drop the entry, so that the next search attempts to load it again
+        remove(entry);
+        release(entry);
+      }
+    }
+  }
+
+  /** Removes, and releases from the device, all the indices of the given owner. */
+  void invalidate(Object owner) throws IOException {
+    List<Entry> toClose = new ArrayList<>();
+    lock.lock();
+    try {
+      for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+        Entry entry = it.next();
+        if (entry.key.owner() == owner) {
+          it.remove();
+          entry.removed = true;
+          bytesUsed -= entry.sizeInBytes;
+          if (entry.refCount == 0) {
+            toClose.add(entry);
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    closeAll(toClose);
+  }
+
+  private void remove(Entry entry) {
+    lock.lock();
+    try {
+      if (entry.removed == false) {
+        entries.remove(entry.key);
+        entry.removed = true;
+        bytesUsed -= entry.sizeInBytes;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(Entry entry) throws IOException {
+    List<Entry> toClose;
+    lock.lock();
+    try {
+      assert entry.refCount > 0;
+      entry.refCount--;
+      // the entry may have been pinned while over budget
+      toClose = evictIfNeeded();
+      if (entry.removed && entry.refCount == 0 && toClose.contains(entry) == false) {
+        toClose.add(entry);
+      }
+    } finally {
+      lock.unlock();
+    }
+    closeAll(toClose);
+  }
+
+  // Evicts the least recently used entries that are not in use, until within budget
+  private List<Entry> evictIfNeeded() {
+    assert lock.isHeldByCurrentThread();
+    List<Entry> evicted = new ArrayList<>();
+    for (Iterator<Entry> it = entries.values().iterator();
+        it.hasNext() && bytesUsed > maxBytes; ) {
+      Entry entry = it.next();
+      if (entry.refCount == 0) {
+        it.remove();
+        entry.removed = true;
+        bytesUsed -= entry.sizeInBytes;
+        evictions++;
+        evicted.add(entry);
+      }
+    }
+    return evicted;
+  }
+
+  private static void closeAll(List<Entry> toClose) throws IOException {
+    if (toClose.isEmpty() == false) {
+      IOUtils.close(toClose.stream().map(entry -> entry.index)::iterator);
+    }
+  }
+
+  private record Key(Object owner, int fieldNumber) {
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key other && owner == other.owner && fieldNumber == other.fieldNumber;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(owner) + fieldNumber;
+    }
+  }
+
+  private static final class Entry {
+    final Key key;
+    final long sizeInBytes;
+    final LazyCuVSIndex index;
+    int refCount; // guarded by the cache lock
+    boolean removed; // guarded by the cache lock
+
+    Entry(Key key, long sizeInBytes, LazyCuVSIndex index) {
+      this.key = key;
+      this.sizeInBytes = sizeInBytes;
+      this.index = index;
+    }
+  }
+
+  /** A handle on an index, which keeps it from being evicted until closed. */
+  static final class Handle implements Closeable {
+    private final CuVSIndexCache cache;
+    private final Entry entry;
+    private final CuVSIndex index;
+    private boolean closed;
+
+    private Handle(CuVSIndexCache cache, Entry entry, CuVSIndex index) {
+      this.cache = cache;
+      this.entry = entry;
+      this.index = index;
+    }
+
+    /** Returns a handle on an index that is not cached, whose lifecycle is managed elsewhere. */
+    static Handle uncached(CuVSIndex index) {
+      return new Handle(null, null, index);
+    }
+
+    CuVSIndex index() {
+      return index;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed == false) {
+        closed = true;
+        if (cache != null) {
+          cache.release(entry);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import org.apache.lucene.codecs.KnnVectorsReader;
+import org.apache.lucene.codecs.perfield.PerFieldKnnVectorsFormat;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.internal.hppc.IntFloatHashMap;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TaskExecutor;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.util.Bits;
+
+/**
+ * Query for CuVS, that searches the nearest vectors of several targets at once. Each segment is
+ * searched with a single GPU dispatch for all the targets.
+ *
+ * <p>Use {@link #searchAll(IndexSearcher)} to get one result set per target. When used as a
+ * regular query, it matches the union of the top {@code k} documents of all the targets, each
+ * scored with the best score it got for any of the targets.
+ */
+public class CuVSKnnFloatMultiVectorQuery extends Query {
+
+  private final String field;
+  private final float[][] targets;
+  private final int k;
+  private final CuVSSearchStrategy searchStrategy;
+
+  public CuVSKnnFloatMultiVectorQuery(String field, float[][] targets, int k) {
+    this(field, targets, k, CuVSSearchStrategy.DEFAULT);
+  }
+
+  public CuVSKnnFloatMultiVectorQuery(
+      String field, float[][] targets, int k, CuVSSearchStrategy searchStrategy) {
+    this.field = Objects.requireNonNull(field, "field");
+    if (targets.length == 0) {
+      throw new IllegalArgumentException("at least one target is required");
+    }
+    this.targets = new float[targets.length][];
+    for (int i = 0; i < targets.length; i++) {
+      this.targets[i] = targets[i].clone();
+    }
+    if (k < 1) {
+      throw new IllegalArgumentException("k must be at least 1, got: " + k);
+    }
+    this.k = k;
+    this.searchStrategy = Objects.requireNonNull(searchStrategy);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public int getK() {
+    return k;
+  }
+
+  public int numTargets() {
+    return targets.length;
+  }
+
+  /**
+   * Searches the nearest vectors of all the targets.
+   *
+   * @return the top {@code k} hits for each of the targets, in the order of the targets
+   */
+  public TopDocs[] searchAll(IndexSearcher searcher) throws IOException {
+    IndexReader reader = searcher.getIndexReader();
+    List<LeafReaderContext> leaves = reader.leaves();
+    TaskExecutor taskExecutor = searcher.getTaskExecutor();
+    List<Callable<TopDocs[]>> tasks = new ArrayList<>(leaves.size());
+    for (LeafReaderContext context : leaves) {
+      tasks.add(() -> searchLeaf(context));
+    }
+    List<TopDocs[]> perLeafResults = taskExecutor.invokeAll(tasks);
+
+    TopDocs[] results = new TopDocs[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      TopDocs[] perLeaf = new TopDocs[perLeafResults.size()];
+      for (int leaf = 0; leaf < perLeaf.length; leaf++) {
+        perLeaf[leaf] = perLeafResults.get(leaf)[i];
+      }
+      results[i] = TopDocs.merge(k, perLeaf);
+    }
+    return results;
+  }
+
+  private TopDocs[] searchLeaf(LeafReaderContext context) throws IOException {
+    LeafReader reader = context.reader();
+    TopDocs[] results = new TopDocs[targets.length];
+    FieldInfo fi = reader.getFieldInfos().fieldInfo(field);
+    if (fi == null || fi.getVectorDimension() == 0) {
+      Arrays.fill(results, emptyTopDocs());
+      return results;
+    }
+
+    KnnCollector[] collectors = new KnnCollector[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      collectors[i] = new PerLeafCuVSKnnCollector(k, Long.MAX_VALUE, searchStrategy);
+    }
+    Bits liveDocs = reader.getLiveDocs();
+    if (vectorsReader(reader, field) instanceof CuVSVectorsReader cuvsReader) {
+      cuvsReader.search(field, targets, collectors, liveDocs);
+    } else {
+      for (int i = 0; i < targets.length; i++) {
+        reader.searchNearestVectors(field, targets[i], collectors[i], liveDocs);
+      }
+    }
+
+    for (int i = 0; i < targets.length; i++) {
+      TopDocs topDocs = collectors[i].topDocs();
+      for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+        scoreDoc.doc += context.docBase;
+      }
+      results[i] = topDocs;
+    }
+    return results;
+  }
+
+  /** Returns the KnnVectorsReader of the given leaf and field, or null if it is not accessible. */
+  static KnnVectorsReader vectorsReader(LeafReader reader, String field) {
+    if (FilterLeafReader.unwrap(reader) instanceof CodecReader codecReader) {
+      KnnVectorsReader vectorsReader = codecReader.getVectorReader();
+      if (vectorsReader instanceof PerFieldKnnVectorsFormat.FieldsReader perFieldReader) {
+        return perFieldReader.getFieldReader(field);
+      }
+      return vectorsReader;
+    }
+    return null;
+  }
+
+  private static TopDocs emptyTopDocs() {
+    return new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+  }
+
+  @Override
+  public Query rewrite(IndexSearcher indexSearcher) throws IOException {
+    TopDocs[] results = searchAll(indexSearcher);
+    IntFloatHashMap bestScores = new IntFloatHashMap();
+    for (TopDocs topDocs : results) {
+      for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+        float score = bestScores.getOrDefault(scoreDoc.doc, Float.NEGATIVE_INFINITY);
+        if (scoreDoc.score > score) {
+          bestScores.put(scoreDoc.doc, scoreDoc.score);
+        }
+      }
+    }
+    if (bestScores.isEmpty()) {
+      return new MatchNoDocsQuery();
+    }
+    ScoreDoc[] hits = new ScoreDoc[bestScores.size()];
+    int i = 0;
+    for (var cursor : bestScores) {
+      hits[i++] = new ScoreDoc(cursor.key, cursor.value);
+    }
+    return DocAndScoreQuery.create(indexSearcher.getIndexReader(), hits);
+  }
+
+  @Override
+  public void visit(QueryVisitor visitor) {
+    if (visitor.acceptField(field)) {
+      visitor.visitLeaf(this);
+    }
+  }
+
+  @Override
+  public String toString(String field) {
+    return getClass().getSimpleName()
+        + ":"
+        + this.field
+        + "["
+        + targets.length
+        + " targets]["
+        + k
+        + "]";
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (sameClassAs(obj) == false) {
+      return false;
+    }
+    CuVSKnnFloatMultiVectorQuery other = (CuVSKnnFloatMultiVectorQuery) obj;
+    return k == other.k
+        && field.equals(other.field)
+        && searchStrategy.equals(other.searchStrategy)
+        && Arrays.deepEquals(targets, other.targets);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(classHash(), field, k, searchStrategy, Arrays.deepHashCode(targets));
+  }
+}
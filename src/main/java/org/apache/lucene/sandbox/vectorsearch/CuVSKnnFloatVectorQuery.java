@@ -15,10 +15,13 @@
  */
 package org.apache.lucene.sandbox.vectorsearch;
 
+import com.nvidia.cuvs.CagraSearchParams.SearchAlgo;
 import java.io.IOException;
+import java.util.Objects;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.knn.KnnCollectorManager;
 import org.apache.lucene.util.Bits;
@@ -26,13 +29,29 @@ import org.apache.lucene.util.Bits;
 /** Query for CuVS */
 public class CuVSKnnFloatVectorQuery extends KnnFloatVectorQuery {
 
-  private final int iTopK;
-  private final int searchWidth;
+  private final CuVSSearchStrategy searchStrategy;
 
   public CuVSKnnFloatVectorQuery(String field, float[] target, int k, int iTopK, int searchWidth) {
-    super(field, target, k);
-    this.iTopK = iTopK;
-    this.searchWidth = searchWidth;
+    this(field, target, k, null, new CuVSSearchStrategy(iTopK, searchWidth, 0, SearchAlgo.AUTO));
+  }
+
+  /**
+   * Creates a CuVSKnnFloatVectorQuery.
+   *
+   * @param field the vector field to search
+   * @param target the query vector
+   * @param k the number of documents to find
+   * @param filter a filter applied before the vector search, or null
+   * @param searchStrategy the CAGRA search parameters to use for this query
+   */
+  public CuVSKnnFloatVectorQuery(
+      String field, float[] target, int k, Query filter, CuVSSearchStrategy searchStrategy) {
+    super(field, target, k, filter);
+    this.searchStrategy = Objects.requireNonNull(searchStrategy);
+  }
+
+  public CuVSSearchStrategy getCuVSSearchStrategy() {
+    return searchStrategy;
   }
 
   @Override
@@ -43,10 +62,21 @@ public class CuVSKnnFloatVectorQuery extends KnnFloatVectorQuery {
       KnnCollectorManager knnCollectorManager)
       throws IOException {
 
-    PerLeafCuVSKnnCollector results = new PerLeafCuVSKnnCollector(k, iTopK, searchWidth);
+    PerLeafCuVSKnnCollector results =
+        new PerLeafCuVSKnnCollector(k, visitedLimit, searchStrategy);
 
     LeafReader reader = context.reader();
-    reader.searchNearestVectors(field, this.getTargetCopy(), results, null);
+    reader.searchNearestVectors(field, this.getTargetCopy(), results, acceptDocs);
     return results.topDocs();
   }
+
+  @Override
+  public boolean equals(Object o) {
+    return super.equals(o) && searchStrategy.equals(((CuVSKnnFloatVectorQuery) o).searchStrategy);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * super.hashCode() + searchStrategy.hashCode();
+  }
 }
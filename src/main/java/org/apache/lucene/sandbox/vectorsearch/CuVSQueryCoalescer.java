@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsReader.handleThrowable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * Coalesces concurrent single vector searches into batched searches.
+ *
+ * <p>The first request to arrive opens a batch and becomes its leader. Requests arriving while the
+ * batch is open join it, until either the window elapses or the batch is full. The leader then
+ * executes the whole batch with a single call to the {@link BatchSearcher}, and each request gets
+ * back its own result. The topK of a batch is the largest topK among its requests.
+ *
+ * @param <R> the type of the per-query result
+ */
+/*package-private*/ final class CuVSQueryCoalescer<R> {
+
+  /** Searches a batch of queries. */
+  interface BatchSearcher<R> {
+    /** Returns one result per query, in the order of the queries. */
+    List<R> search(float[][] queries, int topK) throws IOException;
+  }
+
+  private final BatchSearcher<R> batchSearcher;
+  private final long windowNanos;
+  private final int maxBatchSize;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition batchFull = lock.newCondition();
+  private Batch<R> openBatch; // guarded by lock
+
+  CuVSQueryCoalescer(BatchSearcher<R> batchSearcher, long windowNanos, int maxBatchSize) {
+    if (windowNanos < 0) {
+      throw new IllegalArgumentException("negative window: " + windowNanos);
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1, got: " + maxBatchSize);
+    }
+    this.batchSearcher = batchSearcher;
+    this.windowNanos = windowNanos;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /** Searches the given query, possibly batched with concurrent searches. */
+  R search(float[] query, int topK) throws IOException {
+    if (maxBatchSize == 1 || windowNanos == 0) {
+      return batchSearcher.search(new float[][] {query}, topK).getFirst();
+    }
+
+    final Batch<R> batch;
+    final int slot;
+    final boolean leader;
+    lock.lock();
+    try {
+      if (openBatch == null) {
+        openBatch = new Batch<>(maxBatchSize);
+        leader = true;
+      } else {
+        leader = false;
+      }
+      batch = openBatch;
+      slot = batch.add(query, topK);
+      if (batch.isFull()) {
+        openBatch = null;
+        batchFull.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (leader) {
+      awaitWindow(batch);
+      batch.execute(batchSearcher);
+    }
+    return batch.result(slot);
+  }
+
+  /** Waits until the window elapses, or the batch is full, and then closes the batch. */
+  private void awaitWindow(Batch<R> batch) {
+    lock.lock();
+    try {
+      long remaining = windowNanos;
+      while (openBatch == batch && remaining > 0) {
+        remaining = batchFull.awaitNanos(remaining);
+      }
+      if (openBatch == batch) {
+        openBatch = null;
+      }
+    } catch (InterruptedException e) {
+      if (openBatch == batch) {
+        openBatch = null;
+      }
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long windowNanos() {
+    return windowNanos;
+  }
+
+  int maxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /** A batch of queries, executed once by its leader. */
+  private static final class Batch<R> {
+    private final float[][] queries;
+    private int size;
+    private int topK;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private List<R> results;
+    private Throwable failure;
+
+    Batch(int maxBatchSize) {
+      this.queries = new float[maxBatchSize][];
+    }
+
+    int add(float[] query, int topK) {
+      queries[size] = query;
+      this.topK = Math.max(this.topK, topK);
+      return size++;
+    }
+
+    boolean isFull() {
+      return size == queries.length;
+    }
+
+    // Called by the leader once the batch is closed, so size and topK are stable
+    void execute(BatchSearcher<R> batchSearcher) {
+      try {
+        float[][] batchQueries = queries;
+        if (size < queries.length) {
+          batchQueries = new float[size][];
+          System.arraycopy(queries, 0, batchQueries, 0, size);
+        }
+        List<R> batchResults = batchSearcher.search(batchQueries, topK);
+        if (batchResults.size() != size) {
+          throw new IllegalStateException(
+              "expected " + size + " results, got:" + batchResults.size());
+        }
+        results = batchResults;
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        done.countDown();
+      }
+    }
+
+    R result(int slot) throws IOException {
+      try {
+        done.await();
+      } catch (InterruptedException e) {
+        throw new ThreadInterruptedException(e);
+      }
+      if (failure != null) {
+        handleThrowable(failure);
+      }
+      return results.get(slot);
+    }
+  }
+}
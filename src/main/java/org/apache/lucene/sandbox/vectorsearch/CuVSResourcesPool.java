@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsReader.handleThrowable;
+
+import com.nvidia.cuvs.CuVSResources;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/**
+ * A pool of {@link CuVSResources}, each with its own stream, and possibly on its own device, that
+ * the GPU work of readers and writers is spread over, rather than all sharing a single resources.
+ *
+ * <p>The slots of the pool are leased exclusively, one task at a time: each load, search, build
+ * or merge leases a slot for its duration, so that a resources is never used by two threads at
+ * once. Leases are lock-free while a slot is free, and wait for one to be released otherwise.
+ *
+ * <p>Indices loaded onto the device live on the resources they are loaded with, so a reader
+ * places the index of a field on a slot for the lifetime of the index, and leases that slot to
+ * load, search and release the index. Tasks that do not outlive their lease, e.g. builds, lease
+ * the free slot of the fewest placed indices, so that they keep off the slots whose indices are
+ * searched as much as possible.
+ *
+ * @see CuVSVectorsFormat#setResourcesPool(CuVSResourcesPool)
+ */
+public final class CuVSResourcesPool implements Closeable {
+
+  /** How the slot of an index is picked. */
+  public enum Placement {
+    /** Picks the slots in turn. */
+    ROUND_ROBIN,
+    /** Picks the slot of the fewest placed indices, in turn among ties. */
+    LEAST_LOADED
+  }
+
+  /** Creates the resources of a slot of the pool, e.g. on the device of the slot. */
+  @FunctionalInterface
+  public interface ResourcesFactory {
+    CuVSResources create(int slot) throws Throwable;
+  }
+
+  private static final int ANY_SLOT = -1;
+
+  private final CuVSResources[] resources;
+  private final Placement placement;
+  private final AtomicIntegerArray leased; // 1 if the slot is leased
+  private final AtomicIntegerArray placed; // the number of indices placed on the slot
+  private final AtomicLong nextSlot = new AtomicLong();
+  // only taken to wait for a slot to be released
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  /*package-private*/ CuVSResourcesPool(CuVSResources[] resources, Placement placement) {
+    if (resources.length < 1) {
+      throw new IllegalArgumentException("the pool must have at least 1 slot");
+    }
+    this.resources = resources;
+    this.placement = placement;
+    this.leased = new AtomicIntegerArray(resources.length);
+    this.placed = new AtomicIntegerArray(resources.length);
+  }
+
+  /** Creates a pool of the given number of resources, on the current device. */
+  public static CuVSResourcesPool create(int size, Placement placement) throws IOException {
+    return create(size, placement, slot -> CuVSResources.create());
+  }
+
+  /**
+   * Creates a pool of the given number of resources, created by the given factory, e.g. on the
+   * device {@code slot % numDevices} to spread the pool over the devices of the host.
+   */
+  public static CuVSResourcesPool create(int size, Placement placement, ResourcesFactory factory)
+      throws IOException {
+    if (size < 1) {
+      throw new IllegalArgumentException("size must be at least 1, got: " + size);
+    }
+    CuVSResources[] resources = new CuVSResources[size];
+    try {
+      for (int slot = 0; slot < size; slot++) {
+        resources[slot] = factory.create(slot);
+      }
+    } catch (Throwable t) {
+      for (CuVSResources r : resources) {
+        if (r != null) {
+          try {
+            r.close();
+          } catch (Throwable suppressed) {
+            t.addSuppressed(suppressed);
+          }
+        }
+      }
+      handleThrowable(t);
+    }
+    return new CuVSResourcesPool(resources, placement);
+  }
+
+  /**
+   * Places an index on a slot, picked by the placement of the pool, and returns the slot. The
+   * index is then loaded, searched and released under leases of that slot, and must be removed
+   * with {@link #removeIndex(int)} once released.
+   *
+   * @throws IllegalStateException if the pool is closed
+   */
+  public int placeIndex() {
+    int slot =
+        switch (placement) {
+          case ROUND_ROBIN -> nextSlot();
+          case LEAST_LOADED -> leastLoadedSlot();
+        };
+    placed.incrementAndGet(slot);
+    // placed before checking, so that either this check or the one of close() fails
+    if (closed.get()) {
+      placed.decrementAndGet(slot);
+      throw new IllegalStateException("the pool is closed");
+    }
+    return slot;
+  }
+
+  /** Removes an index placed on the given slot. */
+  public void removeIndex(int slot) {
+    int count = placed.decrementAndGet(slot);
+    assert count >= 0 : "no index placed on slot " + slot;
+  }
+
+  private int nextSlot() {
+    return (int) Math.floorMod(nextSlot.getAndIncrement(), (long) resources.length);
+  }
+
+  private int leastLoadedSlot() {
+    int start = nextSlot();
+    int slot = start;
+    int minPlaced = placed.get(start);
+    for (int i = 1; i < resources.length && minPlaced > 0; i++) {
+      int candidate = (start + i) % resources.length;
+      int candidatePlaced = placed.get(candidate);
+      if (candidatePlaced < minPlaced) {
+        slot = candidate;
+        minPlaced = candidatePlaced;
+      }
+    }
+    return slot;
+  }
+
+  /**
+   * Leases the free slot of the fewest placed indices, in turn among ties, waiting for a slot to be
+   * released if they are all leased. The lease must be closed once the task is done.
+   *
+   * @throws IllegalStateException if the pool is closed
+   */
+  public Lease acquire() {
+    Lease lease = tryAcquire();
+    return lease != null ? lease : awaitLease(ANY_SLOT);
+  }
+
+  /**
+   * Leases the given slot, e.g. the slot an index is placed on, waiting for it to be released if
+   * it is leased. The lease must be closed once the task is done.
+   *
+   * @throws IllegalStateException if the pool is closed
+   */
+  public Lease acquire(int slot) {
+    Lease lease = tryAcquire(slot);
+    return lease != null ? lease : awaitLease(slot);
+  }
+
+  private Lease tryAcquire(int slot) {
+    if (leased.compareAndSet(slot, 0, 1) == false) {
+      return null;
+    }
+    // leased before checking, so that either this check or the one of close() fails
+    if (closed.get()) {
+      release(slot);
+      throw new IllegalStateException("the pool is closed");
+    }
+    return new Lease(slot);
+  }
+
+  private Lease tryAcquire() {
+    int start = nextSlot();
+    // the free slot of the fewest placed indices first
+    int slot = -1;
+    int minPlaced = Integer.MAX_VALUE;
+    for (int i = 0; i < resources.length && minPlaced > 0; i++) {
+      int candidate = (start + i) % resources.length;
+      int candidatePlaced = placed.get(candidate);
+      if (leased.get(candidate) == 0 && candidatePlaced < minPlaced) {
+        slot = candidate;
+        minPlaced = candidatePlaced;
+      }
+    }
+    Lease lease = slot < 0 ? null : tryAcquire(slot);
+    // or any free slot, if that slot was leased meanwhile
+    for (int i = 0; i < resources.length && lease == null; i++) {
+      lease = tryAcquire((start + i) % resources.length);
+    }
+    return lease;
+  }
+
+  // Waits for the given slot, or any slot, to be released. Waiters are counted before attempting
+  // to lease, so that a slot released after a failed attempt signals them.
+  private Lease awaitLease(int slot) {
+    lock.lock();
+    waiters.incrementAndGet();
+    try {
+      while (true) {
+        Lease lease = slot == ANY_SLOT ? tryAcquire() : tryAcquire(slot);
+        if (lease != null) {
+          return lease;
+        }
+        released.await();
+      }
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    } finally {
+      waiters.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  private void release(int slot) {
+    leased.set(slot, 0);
+    if (waiters.get() > 0) {
+      lock.lock();
+      try {
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** Returns the number of slots of the pool. */
+  public int size() {
+    return resources.length;
+  }
+
+  /** Returns whether the given slot is leased. */
+  public boolean isLeased(int slot) {
+    return leased.get(slot) != 0;
+  }
+
+  /** Returns the number of indices placed on the given slot. */
+  public int placedIndices(int slot) {
+    return placed.get(slot);
+  }
+
+  /**
+   * Closes the resources of the pool, which must not be in use anymore: the pool is left open if a
+   * slot is leased, or an index is placed on it, e.g. by a reader that is not closed yet. Once
+   * closed, the pool cannot be leased, nor can indices be placed on it.
+   *
+   * @throws IllegalStateException if a slot is leased, or an index is placed on it
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed.compareAndSet(false, true) == false) {
+      return;
+    }
+    for (int slot = 0; slot < resources.length; slot++) {
+      if (isLeased(slot) || placedIndices(slot) > 0) {
+        closed.set(false);
+        throw new IllegalStateException("the pool is in use, slot " + slot + " is not released");
+      }
+    }
+    try {
+      for (CuVSResources r : resources) {
+        r.close();
+      }
+    } catch (Throwable t) {
+      handleThrowable(t);
+    }
+  }
+
+  /** An exclusive lease of the resources of a slot, released when closed. */
+  public final class Lease implements Closeable {
+    private final int slot;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private Lease(int slot) {
+      this.slot = slot;
+    }
+
+    /** Returns the slot of the lease. */
+    public int slot() {
+      return slot;
+    }
+
+    /**
+     * Returns the resources of the slot of the lease.
+     *
+     * @throws IllegalStateException if the lease is closed
+     */
+    public CuVSResources resources() {
+      if (closed.get()) {
+        throw new IllegalStateException("the lease of slot " + slot + " is closed");
+      }
+      return resources[slot];
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        release(slot);
+      }
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The neighbors found for one query vector, as parallel arrays of ordinals and raw distances, in
+ * the order returned by the search, i.e. nearest first.
+ */
+/*package-private*/ final class CuVSSearchResult {
+
+  static final CuVSSearchResult EMPTY = new CuVSSearchResult(new int[0], new float[0], 0);
+
+  private final int[] ords;
+  private final float[] distances;
+  private final int size;
+
+  CuVSSearchResult(int[] ords, float[] distances, int size) {
+    assert ords.length >= size && distances.length >= size;
+    this.ords = ords;
+    this.distances = distances;
+    this.size = size;
+  }
+
+  /** The number of neighbors. */
+  int size() {
+    return size;
+  }
+
+  /** The ordinal of the i-th nearest neighbor. */
+  int ord(int i) {
+    return ords[i];
+  }
+
+  /** The raw distance, as computed by cuVS, of the i-th nearest neighbor. */
+  float distance(int i) {
+    return distances[i];
+  }
+
+  /**
+   * Converts the results of cuVS, which are boxed in ordered maps, once. Ordinals outside of
+   * [0, count), which pad the results when fewer than topK neighbors are found, are dropped.
+   */
+  static CuVSSearchResult fromMap(Map<Integer, Float> result, int count) {
+    int[] ords = new int[result.size()];
+    float[] distances = new float[result.size()];
+    int size = 0;
+    for (var entry : result.entrySet()) {
+      int ord = entry.getKey();
+      if (ord < 0 || ord >= count) {
+        continue;
+      }
+      ords[size] = ord;
+      distances[size] = entry.getValue();
+      size++;
+    }
+    return new CuVSSearchResult(ords, distances, size);
+  }
+
+  /** Converts the results of a batched search, one per query vector. */
+  static List<CuVSSearchResult> fromMaps(List<Map<Integer, Float>> results, int count) {
+    CuVSSearchResult[] converted = new CuVSSearchResult[results.size()];
+    for (int i = 0; i < converted.length; i++) {
+      converted[i] = fromMap(results.get(i), count);
+    }
+    return List.of(converted);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import com.nvidia.cuvs.CagraSearchParams.SearchAlgo;
+import java.util.Objects;
+import org.apache.lucene.search.knn.KnnSearchStrategy;
+
+/**
+ * Search strategy for CuVS, carrying the per-query CAGRA search parameters from the query to the
+ * reader, through {@link org.apache.lucene.search.KnnCollector#getSearchStrategy()}. It lets
+ * requests trade recall for latency, e.g. a small itopk and a single iteration for an
+ * autocomplete tier, and a large itopk for an accurate tier. The number of probed lists of
+ * {@link CuVSVectorsWriter.IndexType#IVF_FLAT} indices is tuned the same way.
+ */
+public class CuVSSearchStrategy extends KnnSearchStrategy {
+
+  /** The default strategy, letting the reader pick the parameters from k. */
+  public static final CuVSSearchStrategy DEFAULT =
+      new CuVSSearchStrategy(0, 1, 0, SearchAlgo.AUTO, 0);
+
+  private final int iTopK;
+  private final int searchWidth;
+  private final int maxIterations;
+  private final SearchAlgo searchAlgo;
+  private final int nProbes;
+
+  /**
+   * Creates a CuVSSearchStrategy.
+   *
+   * @param iTopK the size of the intermediate results kept during the search; values lower than
+   *     the topK of the search are raised to it, so 0 means the topK
+   * @param searchWidth the number of graph nodes used as starting points at each iteration
+   * @param maxIterations the maximum number of search iterations, or 0 to let cuVS decide
+   * @param searchAlgo the CAGRA search algorithm
+   */
+  public CuVSSearchStrategy(int iTopK, int searchWidth, int maxIterations, SearchAlgo searchAlgo) {
+    this(iTopK, searchWidth, maxIterations, searchAlgo, 0);
+  }
+
+  /**
+   * Creates a CuVSSearchStrategy, with the number of probed lists of IVF-Flat indices.
+   *
+   * @param iTopK the size of the intermediate results kept during the search; values lower than
+   *     the topK of the search are raised to it, so 0 means the topK
+   * @param searchWidth the number of graph nodes used as starting points at each iteration
+   * @param maxIterations the maximum number of search iterations, or 0 to let cuVS decide
+   * @param searchAlgo the CAGRA search algorithm
+   * @param nProbes the number of lists probed by IVF-Flat searches, or 0 for the default
+   */
+  public CuVSSearchStrategy(
+      int iTopK, int searchWidth, int maxIterations, SearchAlgo searchAlgo, int nProbes) {
+    if (iTopK < 0) {
+      throw new IllegalArgumentException("iTopK must be positive or 0, got: " + iTopK);
+    }
+    if (searchWidth < 1) {
+      throw new IllegalArgumentException("searchWidth must be at least 1, got: " + searchWidth);
+    }
+    if (maxIterations < 0) {
+      throw new IllegalArgumentException(
+          "maxIterations must be positive or 0, got: " + maxIterations);
+    }
+    if (nProbes < 0) {
+      throw new IllegalArgumentException("nProbes must be positive or 0, got: " + nProbes);
+    }
+    this.iTopK = iTopK;
+    this.searchWidth = searchWidth;
+    this.maxIterations = maxIterations;
+    this.searchAlgo = Objects.requireNonNull(searchAlgo);
+    this.nProbes = nProbes;
+  }
+
+  public int iTopK() {
+    return iTopK;
+  }
+
+  public int searchWidth() {
+    return searchWidth;
+  }
+
+  public int maxIterations() {
+    return maxIterations;
+  }
+
+  public SearchAlgo searchAlgo() {
+    return searchAlgo;
+  }
+
+  public int nProbes() {
+    return nProbes;
+  }
+
+  /** Returns the strategy carried by the given search strategy, or the default one. */
+  static CuVSSearchStrategy of(KnnSearchStrategy searchStrategy) {
+    if (searchStrategy instanceof CuVSSearchStrategy cuvsSearchStrategy) {
+      return cuvsSearchStrategy;
+    }
+    return DEFAULT;
+  }
+
+  @Override
+  public void nextVectorsBlock() {
+    // nothing to do, the GPU search is not performed in blocks
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    CuVSSearchStrategy other = (CuVSSearchStrategy) obj;
+    return iTopK == other.iTopK
+        && searchWidth == other.searchWidth
+        && maxIterations == other.maxIterations
+        && searchAlgo == other.searchAlgo
+        && nProbes == other.nProbes;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(iTopK, searchWidth, maxIterations, searchAlgo, nProbes);
+  }
+
+  @Override
+  public String toString() {
+    return "CuVSSearchStrategy(iTopK="
+        + iTopK
+        + ", searchWidth="
+        + searchWidth
+        + ", maxIterations="
+        + maxIterations
+        + ", searchAlgo="
+        + searchAlgo
+        + ", nProbes="
+        + nProbes
+        + ")";
+  }
+}
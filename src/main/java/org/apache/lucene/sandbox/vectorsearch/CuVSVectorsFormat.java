@@ -18,14 +18,22 @@ package org.apache.lucene.sandbox.vectorsearch;
 import com.nvidia.cuvs.CuVSResources;
 import com.nvidia.cuvs.LibraryException;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Logger;
 import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.KnnVectorsReader;
 import org.apache.lucene.codecs.hnsw.DefaultFlatVectorScorer;
 import org.apache.lucene.codecs.hnsw.FlatVectorsFormat;
 import org.apache.lucene.codecs.lucene99.Lucene99FlatVectorsFormat;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
 import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IndexType;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IvfPqParams;
+import org.apache.lucene.util.InfoStream;
 
 /** CuVS based KnnVectorsFormat for GPU acceleration */
 public class CuVSVectorsFormat extends KnnVectorsFormat {
@@ -39,15 +47,43 @@ public class CuVSVectorsFormat extends KnnVectorsFormat {
   static final String CUVS_INDEX_EXT = "vcag";
 
   static final int VERSION_START = 0;
-  static final int VERSION_CURRENT = VERSION_START;
+  static final int VERSION_BINARY_QUANTIZED = 1;
+  static final int VERSION_IVF_PQ = 2;
+  static final int VERSION_IVF_FLAT = 3;
+  static final int VERSION_CURRENT = VERSION_IVF_FLAT;
 
   public static final int DEFAULT_WRITER_THREADS = 32;
   public static final int DEFAULT_INTERMEDIATE_GRAPH_DEGREE = 128;
   public static final int DEFAULT_GRAPH_DEGREE = 64;
   public static final IndexType DEFAULT_INDEX_TYPE = IndexType.CAGRA;
+  public static final int DEFAULT_COALESCE_MAX_BATCH_SIZE = 64;
+  public static final int DEFAULT_EXACT_SEARCH_THRESHOLD = 512;
+  public static final int DEFAULT_MAX_CONCURRENT_INDEX_LOADS = 4;
+  public static final int DEFAULT_BINARY_QUANTIZED_OVERSAMPLE = 5;
+  public static final int DEFAULT_COMPRESSED_REFINEMENT = 2;
 
   static CuVSResources resources = cuVSResourcesOrNull();
 
+  // Search time settings. Readers are instantiated by name, through SPI, rather than from the
+  // format instance configured for writing, so these settings are process wide.
+  private static volatile long coalesceWindowNanos = 0L;
+  private static volatile int coalesceMaxBatchSize = DEFAULT_COALESCE_MAX_BATCH_SIZE;
+  private static volatile int exactSearchThreshold = DEFAULT_EXACT_SEARCH_THRESHOLD;
+  private static volatile int binaryQuantizedOversample = DEFAULT_BINARY_QUANTIZED_OVERSAMPLE;
+  private static volatile int compressedRefinement = DEFAULT_COMPRESSED_REFINEMENT;
+  private static volatile boolean lazyIndexLoading = false;
+  private static volatile Executor indexLoadingExecutor = null;
+  private static volatile Executor cpuSearchExecutor = null;
+  private static volatile Executor checksumExecutor = null; // null for the default executor
+  private static volatile Semaphore indexLoadPermits =
+      new Semaphore(DEFAULT_MAX_CONCURRENT_INDEX_LOADS);
+
+  // Settings of the devices, shared by all the readers and writers of the process. The pool of
+  // resources the indices are placed on, null to share the static resources
+  private static volatile CuVSResourcesPool resourcesPool = null;
+  // The scheduler of the index builds of all the writers
+  private static volatile CuVSBuildScheduler buildScheduler = CuVSBuildScheduler.unbounded();
+
   /** The format for storing, reading, and merging raw vectors on disk. */
   private static final FlatVectorsFormat flatVectorsFormat =
       new Lucene99FlatVectorsFormat(DefaultFlatVectorScorer.INSTANCE);
@@ -57,6 +93,9 @@ public class CuVSVectorsFormat extends KnnVectorsFormat {
   final int intGraphDegree;
   final int graphDegree;
   final CuVSVectorsWriter.IndexType indexType; // the index type to build, when writing
+  final IvfPqParams ivfPqParams; // the parameters of IVF_PQ indices
+  final boolean compressDataset; // whether the dataset of cagra indices is compressed
+  final Executor indexBuildExecutor; // null to build the fields of a segment one at a time
 
   /**
    * Creates a CuVSVectorsFormat, with default values.
@@ -64,25 +103,110 @@ public class CuVSVectorsFormat extends KnnVectorsFormat {
    * @throws LibraryException if the native library fails to load
    */
   public CuVSVectorsFormat() {
-    this(
-        DEFAULT_WRITER_THREADS,
-        DEFAULT_INTERMEDIATE_GRAPH_DEGREE,
-        DEFAULT_GRAPH_DEGREE,
-        DEFAULT_INDEX_TYPE);
+    this(new Builder());
   }
 
   /**
-   * Creates a CuVSVectorsFormat, with the given threads, graph degree, etc.
+   * Creates a CuVSVectorsFormat, with the given threads, graph degree, etc. See {@link Builder}
+   * for the other settings.
    *
    * @throws LibraryException if the native library fails to load
    */
   public CuVSVectorsFormat(
       int cuvsWriterThreads, int intGraphDegree, int graphDegree, IndexType indexType) {
+    this(
+        new Builder()
+            .withWriterThreads(cuvsWriterThreads)
+            .withIntermediateGraphDegree(intGraphDegree)
+            .withGraphDegree(graphDegree)
+            .withIndexType(indexType));
+  }
+
+  private CuVSVectorsFormat(Builder builder) {
     super("CuVSVectorsFormat");
-    this.cuvsWriterThreads = cuvsWriterThreads;
-    this.intGraphDegree = intGraphDegree;
-    this.graphDegree = graphDegree;
-    this.indexType = indexType;
+    this.cuvsWriterThreads = builder.writerThreads;
+    this.intGraphDegree = builder.intGraphDegree;
+    this.graphDegree = builder.graphDegree;
+    this.indexType = builder.indexType;
+    this.ivfPqParams = builder.ivfPqParams;
+    this.compressDataset = builder.compressDataset;
+    this.indexBuildExecutor = builder.indexBuildExecutor;
+  }
+
+  /** Builds a CuVSVectorsFormat, with the default values of the settings that are not set. */
+  public static final class Builder {
+    private int writerThreads = DEFAULT_WRITER_THREADS;
+    private int intGraphDegree = DEFAULT_INTERMEDIATE_GRAPH_DEGREE;
+    private int graphDegree = DEFAULT_GRAPH_DEGREE;
+    private IndexType indexType = DEFAULT_INDEX_TYPE;
+    private IvfPqParams ivfPqParams = IvfPqParams.DEFAULT;
+    private boolean compressDataset = false;
+    private Executor indexBuildExecutor = null;
+
+    /** Sets the number of threads the Cagra indices are built with. */
+    public Builder withWriterThreads(int writerThreads) {
+      this.writerThreads = writerThreads;
+      return this;
+    }
+
+    /** Sets the degree of the intermediate graph of the Cagra indices. */
+    public Builder withIntermediateGraphDegree(int intGraphDegree) {
+      this.intGraphDegree = intGraphDegree;
+      return this;
+    }
+
+    /** Sets the degree of the graph of the Cagra indices. */
+    public Builder withGraphDegree(int graphDegree) {
+      this.graphDegree = graphDegree;
+      return this;
+    }
+
+    /** Sets the type of the indices built, when writing. */
+    public Builder withIndexType(IndexType indexType) {
+      this.indexType = indexType;
+      return this;
+    }
+
+    /** Sets the parameters of {@link IndexType#IVF_PQ} indices. */
+    public Builder withIvfPqParams(IvfPqParams ivfPqParams) {
+      this.ivfPqParams = Objects.requireNonNull(ivfPqParams);
+      return this;
+    }
+
+    /**
+     * Sets whether the dataset of the Cagra indices is compressed on the device, with one 8-bit
+     * code per sub-vector of 4 dimensions, or of 2 if the dimensions are not a multiple of 4, 16
+     * or 8 times smaller than the float vectors. The datasets of fields of an odd number of
+     * dimensions are not compressed. The hits are rescored exactly against the raw vectors, see
+     * {@link CuVSVectorsFormat#setCompressedRefinement(int)}. Brute Force indices keep the float
+     * vectors.
+     */
+    public Builder withCompressedDataset(boolean compressDataset) {
+      this.compressDataset = compressDataset;
+      return this;
+    }
+
+    /**
+     * Sets the executor on which the writers build the GPU indices of the fields of a segment
+     * concurrently, when the segment is flushed or merged. Each field is built with the {@link
+     * CuVSResources} of the thread that builds it, created once per thread, or of a slot of the
+     * resources pool, if set, into its own buffer on the heap, and the buffers are appended in
+     * field order, so that the files are the same as when built sequentially. A {@code null}
+     * executor, the default, builds the fields one at a time, straight into the index file.
+     */
+    public Builder withIndexBuildExecutor(Executor indexBuildExecutor) {
+      this.indexBuildExecutor = indexBuildExecutor;
+      return this;
+    }
+
+    /**
+     * Returns the format of the settings of this builder.
+     *
+     * @throws LibraryException if the native library fails to load
+     */
+    public CuVSVectorsFormat build() {
+      return new CuVSVectorsFormat(this);
+    }
   }
 
   private static CuVSResources cuVSResourcesOrNull() {
@@ -105,23 +229,253 @@ public class CuVSVectorsFormat extends KnnVectorsFormat {
     return resources != null;
   }
 
-  private static void checkSupported() {
+  /**
+   * Enables the coalescing of concurrent single vector searches, on the same field of the same
+   * segment, into batched searches. A search waits at most {@code window} for other searches to
+   * join its batch, and a batch is issued as soon as it holds {@code maxBatchSize} queries. A zero
+   * window disables coalescing, which is the default. Filtered searches are not coalesced, they
+   * pass their filter to the GPU.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setQueryCoalescing(Duration window, int maxBatchSize) {
+    if (window.isNegative()) {
+      throw new IllegalArgumentException("negative window: " + window);
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be at least 1, got: " + maxBatchSize);
+    }
+    coalesceMaxBatchSize = maxBatchSize;
+    coalesceWindowNanos = window.toNanos();
+  }
+
+  static long coalesceWindowNanos() {
+    return coalesceWindowNanos;
+  }
+
+  static int coalesceMaxBatchSize() {
+    return coalesceMaxBatchSize;
+  }
+
+  /**
+   * Sets the number of accepted documents in a segment, at or below which a filtered search scores
+   * the accepted vectors exactly on the CPU rather than searching the GPU index. A threshold of
+   * zero only falls back to exact search when no more than k documents are accepted.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setExactSearchThreshold(int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("negative threshold: " + threshold);
+    }
+    exactSearchThreshold = threshold;
+  }
+
+  static int exactSearchThreshold() {
+    return exactSearchThreshold;
+  }
+
+  /**
+   * Sets the oversampling of searches of {@link IndexType#BINARY_QUANTIZED} indices: {@code
+   * oversample * k} candidates are selected by the hamming distance of their quantized vectors,
+   * and rescored exactly against the raw vectors. Higher values trade speed for recall.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setBinaryQuantizedOversample(int oversample) {
+    if (oversample < 1) {
+      throw new IllegalArgumentException("oversample must be at least 1, got: " + oversample);
+    }
+    binaryQuantizedOversample = oversample;
+  }
+
+  static int binaryQuantizedOversample() {
+    return binaryQuantizedOversample;
+  }
+
+  /**
+   * Sets the refinement of searches of the indices whose dataset is PQ compressed on the device,
+   * the Cagra indices of a format that compresses their dataset, and {@link IndexType#IVF_PQ}
+   * indices: {@code refinement * k} candidates are searched on the GPU, and rescored exactly
+   * against the raw vectors. Zero disables the refinement, the hits are then scored by their
+   * distances to the compressed vectors.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setCompressedRefinement(int refinement) {
+    if (refinement < 0) {
+      throw new IllegalArgumentException("negative refinement: " + refinement);
+    }
+    compressedRefinement = refinement;
+  }
+
+  static int compressedRefinement() {
+    return compressedRefinement;
+  }
+
+  /**
+   * Enables the lazy loading of the CuVS indices. When enabled, the indices of a field are loaded
+   * onto the device when the field is first searched, rather than when the segment is opened. This
+   * saves device memory and speeds up the opening of readers, when only some of the vector fields
+   * are searched.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setLazyIndexLoading(boolean lazy) {
+    lazyIndexLoading = lazy;
+  }
+
+  static boolean lazyIndexLoading() {
+    return lazyIndexLoading;
+  }
+
+  /**
+   * Enables a process wide cache of the CuVS indices, that keeps the indices loaded on the device
+   * within a budget of {@code maxBytes}. The indices are loaded when first searched and the least
+   * recently searched ones are released from the device, when over budget, to be loaded again when
+   * next searched. A budget of 0 disables the cache, which is the default, in which case each
+   * reader holds its indices until closed. See {@link CuVSIndexCache#getInstance()} for the hit,
+   * miss and eviction counts.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setIndexCacheMaxBytes(long maxBytes) {
+    CuVSIndexCache.configure(maxBytes);
+  }
+
+  /**
+   * Sets the executor on which the CuVS indices are loaded when a reader is opened, and the maximum
+   * number of indices loaded onto the device concurrently, across all readers. With an executor,
+   * opening a reader schedules the loading of its indices and returns, so that the indices of all
+   * the fields and segments of a {@code DirectoryReader} are loaded in parallel; a search waits for
+   * the index it needs to be loaded. A {@code null} executor, the default, loads the indices one
+   * at a time, as each reader is opened.
+   *
+   * <p>Whether loaded in parallel or not, loads are timed and reported to the {@link
+   * InfoStream#getDefault() default InfoStream}, under the {@link
+   * CuVSVectorsWriter#CUVS_COMPONENT} component.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setIndexLoading(Executor executor, int maxConcurrentLoads) {
+    if (maxConcurrentLoads < 1) {
+      throw new IllegalArgumentException(
+          "maxConcurrentLoads must be at least 1, got: " + maxConcurrentLoads);
+    }
+    indexLoadPermits = new Semaphore(maxConcurrentLoads);
+    indexLoadingExecutor = executor;
+  }
+
+  static Executor indexLoadingExecutor() {
+    return indexLoadingExecutor;
+  }
+
+  static Semaphore indexLoadPermits() {
+    return indexLoadPermits;
+  }
+
+  /**
+   * Sets the executor on which vectors are scored exactly on the CPU, i.e. for selective filters,
+   * and for all searches when the GPU is not available. Large segments are then split in slices
+   * that are scored concurrently. A {@code null} executor, the default, scores each segment on the
+   * searching thread.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setCpuSearchExecutor(Executor executor) {
+    cpuSearchExecutor = executor;
+  }
+
+  static Executor cpuSearchExecutor() {
+    return cpuSearchExecutor;
+  }
+
+  /**
+   * Sets the executor on which the regions of large index files are checksummed concurrently, in
+   * {@link KnnVectorsReader#checkIntegrity()}, i.e. by CheckIndex and when merging. A {@code null}
+   * executor restores the default, a shared pool of daemon threads, one per available processor.
+   *
+   * <p>The setting applies to readers opened after the call.
+   */
+  public static void setChecksumExecutor(Executor executor) {
+    checksumExecutor = executor;
+  }
+
+  static Executor checksumExecutor() {
+    Executor executor = checksumExecutor;
+    return executor == null ? DefaultChecksumExecutor.INSTANCE : executor;
+  }
+
+  // The default checksum executor, created when first used
+  private static final class DefaultChecksumExecutor {
+    static final Executor INSTANCE =
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> {
+              Thread thread = new Thread(r, "cuvs-checksum");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Sets the scheduler of the GPU index builds of all the writers, which queues the builds and
+   * admits them against a device memory budget, flushes before merges. The default scheduler,
+   * {@link CuVSBuildScheduler#unbounded()}, admits all the builds immediately.
+   *
+   * <p>The setting applies to writers created after the call.
+   */
+  public static void setBuildScheduler(CuVSBuildScheduler scheduler) {
+    buildScheduler = Objects.requireNonNull(scheduler);
+  }
+
+  /**
+   * Sets the pool of resources that the GPU work is spread over, several streams, or devices,
+   * rather than all sharing the resources of the format. Readers place the index of each field of
+   * a segment on a slot of the pool, and lease that slot for each load and search of the index.
+   * Writers lease the free slot of the fewest placed indices for each build, or merge, of a field,
+   * once admitted by the build scheduler. Leases are exclusive, so a slot is used by one thread at
+   * a time. A {@code null} pool, the default, shares the resources of the format. The pool is not
+   * closed by the format, and may only be closed once the readers using it are closed.
+   *
+   * <p>The setting applies to readers and writers created after the call.
+   */
+  public static void setResourcesPool(CuVSResourcesPool pool) {
+    resourcesPool = pool;
+  }
+
+  static CuVSResourcesPool resourcesPool() {
+    return resourcesPool;
+  }
+
+  /** Returns the scheduler of the GPU index builds, e.g. to monitor its queue. */
+  public static CuVSBuildScheduler buildScheduler() {
+    return buildScheduler;
+  }
+
+  static void checkSupported() {
     if (!supported()) {
       throw new UnsupportedOperationException();
     }
   }
 
+  /**
+   * Returns a writer for the given segment. Without a GPU, the writer only writes the raw vectors,
+   * so that segments can still be flushed and merged; such segments are searched exactly, on the
+   * CPU, until merged by a writer with a GPU.
+   */
   @Override
   public CuVSVectorsWriter fieldsWriter(SegmentWriteState state) throws IOException {
-    checkSupported();
     var flatWriter = flatVectorsFormat.fieldsWriter(state);
-    return new CuVSVectorsWriter(
-        state, cuvsWriterThreads, intGraphDegree, graphDegree, indexType, resources, flatWriter);
+    return new CuVSVectorsWriter(state, this, resources, flatWriter);
   }
 
+  /**
+   * Returns a reader for the given segment. Without a GPU, the reader searches the raw vectors
+   * exactly, on the CPU.
+   */
   @Override
   public CuVSVectorsReader fieldsReader(SegmentReadState state) throws IOException {
-    checkSupported();
     var flatReader = flatVectorsFormat.fieldsReader(state);
     return new CuVSVectorsReader(state, resources, flatReader);
   }
@@ -135,9 +489,12 @@ public class CuVSVectorsFormat extends KnnVectorsFormat {
   public String toString() {
     StringBuilder sb = new StringBuilder("CuVSVectorsFormat(");
     sb.append("cuvsWriterThreads=").append(cuvsWriterThreads);
-    sb.append("intGraphDegree=").append(intGraphDegree);
-    sb.append("graphDegree=").append(graphDegree);
-    sb.append("resources=").append(resources);
+    sb.append(", intGraphDegree=").append(intGraphDegree);
+    sb.append(", graphDegree=").append(graphDegree);
+    sb.append(", indexType=").append(indexType);
+    sb.append(", ivfPqParams=").append(ivfPqParams);
+    sb.append(", compressDataset=").append(compressDataset);
+    sb.append(", resources=").append(resources);
     sb.append(")");
     return sb.toString();
   }
@@ -19,8 +19,12 @@ import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDE
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_EXT;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_EXT;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_NAME;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_BINARY_QUANTIZED;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_CURRENT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_IVF_FLAT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_IVF_PQ;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_START;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.CUVS_COMPONENT;
 
 import com.nvidia.cuvs.BruteForceIndex;
 import com.nvidia.cuvs.BruteForceQuery;
@@ -30,10 +34,19 @@ import com.nvidia.cuvs.CagraSearchParams;
 import com.nvidia.cuvs.CuVSResources;
 import com.nvidia.cuvs.HnswIndex;
 import com.nvidia.cuvs.HnswIndexParams;
+import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -46,41 +59,73 @@ import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.FloatVectorValues;
 import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.KnnVectorValues;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.VectorEncoding;
 import org.apache.lucene.index.VectorSimilarityFunction;
 import org.apache.lucene.internal.hppc.IntObjectHashMap;
 import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TaskExecutor;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.ReadAdvice;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util.hnsw.HnswGraphSearcher;
 import org.apache.lucene.util.hnsw.IntToIntFunction;
+import org.apache.lucene.util.hnsw.RandomVectorScorer;
 
-/** KnnVectorsReader instance associated with CuVS format */
+/**
+ * KnnVectorsReader instance associated with CuVS format. Without cuVS resources, e.g. on a machine
+ * without a GPU, the segment is still readable, and searches score the vectors exactly on the CPU.
+ */
 public class CuVSVectorsReader extends KnnVectorsReader {
 
-  @SuppressWarnings("unused")
   private static final Logger log = Logger.getLogger(CuVSVectorsReader.class.getName());
 
-  private final CuVSResources resources;
+  private final CuVSResources resources; // null if the GPU is not available
+  private final CuVSResourcesPool resourcesPool; // null to load the indices with the resources
   private final FlatVectorsReader flatVectorsReader; // for reading the raw vectors
+  private final String segmentName;
   private final FieldInfos fieldInfos;
   private final IntObjectHashMap<FieldEntry> fields;
-  private final IntObjectHashMap<CuVSIndex> cuvsIndices;
+  private final IntObjectHashMap<LazyCuVSIndex> cuvsIndices;
+  private final IntObjectHashMap<CagraGraph> cagraGraphs; // searched on the CPU, without a GPU
+  private final IntObjectHashMap<CuVSQueryCoalescer<CuVSSearchResult>> coalescers;
   private final IndexInput cuvsIndexInput;
+  private final int exactSearchThreshold;
+  private final int binaryQuantizedOversample;
+  private final int compressedRefinement;
+  private final CuVSIndexCache indexCache; // null if the indices are owned by this reader
+  private final Semaphore indexLoadPermits; // bounds the concurrent loads onto the device
+  private final TaskExecutor cpuSearchExecutor; // null to score on the calling thread
+  private final TaskExecutor checksumExecutor;
 
   public CuVSVectorsReader(
       SegmentReadState state, CuVSResources resources, FlatVectorsReader flatReader)
       throws IOException {
     this.resources = resources;
+    this.resourcesPool = resources == null ? null : CuVSVectorsFormat.resourcesPool();
     this.flatVectorsReader = flatReader;
+    this.segmentName = state.segmentInfo.name;
     this.fieldInfos = state.fieldInfos;
     this.fields = new IntObjectHashMap<>();
+    this.exactSearchThreshold = CuVSVectorsFormat.exactSearchThreshold();
+    this.binaryQuantizedOversample = CuVSVectorsFormat.binaryQuantizedOversample();
+    this.compressedRefinement = CuVSVectorsFormat.compressedRefinement();
+    this.indexCache = CuVSIndexCache.getInstance();
+    this.indexLoadPermits = CuVSVectorsFormat.indexLoadPermits();
+    Executor executor = CuVSVectorsFormat.cpuSearchExecutor();
+    this.cpuSearchExecutor = executor == null ? null : new TaskExecutor(executor);
+    this.checksumExecutor = new TaskExecutor(CuVSVectorsFormat.checksumExecutor());
 
     String metaFileName =
         IndexFileNames.segmentFileName(
@@ -98,15 +143,21 @@ public class CuVSVectorsReader extends KnnVectorsReader {
                 VERSION_CURRENT,
                 state.segmentInfo.getId(),
                 state.segmentSuffix);
-        readFields(meta);
+        readFields(meta, versionMeta);
       } catch (Throwable exception) {
         priorException = exception;
       } finally {
         CodecUtil.checkFooter(meta, priorException);
       }
-      var ioContext = state.context.withReadAdvice(ReadAdvice.SEQUENTIAL);
+      // the indices searched on the CPU are read in place, at random, while those loaded onto the
+      // device are read sequentially
+      var ioContext =
+          state.context.withReadAdvice(
+              searchesInPlace() ? ReadAdvice.RANDOM : ReadAdvice.SEQUENTIAL);
       cuvsIndexInput = openCuVSInput(state, versionMeta, ioContext);
       cuvsIndices = loadCuVSIndices();
+      cagraGraphs = readCagraGraphs();
+      coalescers = createCoalescers();
       success = true;
     } finally {
       if (success == false) {
@@ -141,6 +192,29 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     }
   }
 
+  // Whether some of the indices are searched in place, on the CPU: the CAGRA graphs without a
+  // GPU, and the binary quantized and IVF-Flat indices
+  private boolean searchesInPlace() {
+    if (resources == null) {
+      return true;
+    }
+    for (var e : fields) {
+      if (e.value.binaryIndexLength() > 0 || e.value.ivfFlatIndexLength() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a slice of the given region of the index file. The slice is taken from a clone of the
+   * index input, as the indices are loaded, searched and merged by concurrent threads.
+   */
+  private IndexInput indexSlice(String sliceDescription, long offset, long length)
+      throws IOException {
+    return cuvsIndexInput.clone().slice(sliceDescription, offset, length);
+  }
+
   private void validateFieldEntry(FieldInfo info, FieldEntry fieldEntry) {
     int dimension = info.getVectorDimension();
     if (dimension != fieldEntry.dims()) {
@@ -154,13 +228,13 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     }
   }
 
-  private void readFields(ChecksumIndexInput meta) throws IOException {
+  private void readFields(ChecksumIndexInput meta, int version) throws IOException {
     for (int fieldNumber = meta.readInt(); fieldNumber != -1; fieldNumber = meta.readInt()) {
       FieldInfo info = fieldInfos.fieldInfo(fieldNumber);
       if (info == null) {
         throw new CorruptIndexException("Invalid field number: " + fieldNumber, meta);
       }
-      FieldEntry fieldEntry = readField(meta, info);
+      FieldEntry fieldEntry = readField(meta, info, version);
       validateFieldEntry(info, fieldEntry);
       fields.put(info.number, fieldEntry);
     }
@@ -193,7 +267,8 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     return VectorEncoding.values()[encodingId];
   }
 
-  private FieldEntry readField(IndexInput input, FieldInfo info) throws IOException {
+  private FieldEntry readField(IndexInput input, FieldInfo info, int version)
+      throws IOException {
     VectorEncoding vectorEncoding = readVectorEncoding(input);
     VectorSimilarityFunction similarityFunction = readSimilarityFunction(input);
     if (similarityFunction != info.getVectorSimilarityFunction()) {
@@ -205,7 +280,8 @@ public class CuVSVectorsReader extends KnnVectorsReader {
               + " != "
               + info.getVectorSimilarityFunction());
     }
-    return FieldEntry.readEntry(input, vectorEncoding, info.getVectorSimilarityFunction());
+    return FieldEntry.readEntry(
+        input, vectorEncoding, info.getVectorSimilarityFunction(), version);
   }
 
   private FieldEntry getFieldEntry(String field, VectorEncoding expectedEncoding) {
@@ -226,62 +302,226 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     return fieldEntry;
   }
 
-  private IntObjectHashMap<CuVSIndex> loadCuVSIndices() throws IOException {
-    var indices = new IntObjectHashMap<CuVSIndex>();
+  private IntObjectHashMap<LazyCuVSIndex> loadCuVSIndices() throws IOException {
+    var indices = new IntObjectHashMap<LazyCuVSIndex>();
+    if (resources == null || indexCache != null) {
+      // no GPU to load the indices onto, or they are loaded on demand, and owned, by the cache
+      return indices;
+    }
     for (var e : fields) {
       var fieldEntry = e.value;
       int fieldNumber = e.key;
-      var cuvsIndex = loadCuVSIndex(fieldEntry);
-      indices.put(fieldNumber, cuvsIndex);
+      indices.put(fieldNumber, new LazyCuVSIndex(() -> loadCuVSIndex(fieldNumber, fieldEntry)));
+    }
+    if (CuVSVectorsFormat.lazyIndexLoading() == false) {
+      Executor executor = CuVSVectorsFormat.indexLoadingExecutor();
+      for (var cursor : indices) {
+        LazyCuVSIndex lazyIndex = cursor.value;
+        if (executor == null) {
+          lazyIndex.get();
+          continue;
+        }
+        String field = fieldInfos.fieldInfo(cursor.key).name;
+        try {
+          executor.execute(() -> loadInBackground(field, lazyIndex));
+        } catch (RejectedExecutionException e) {
+          // loaded by the first search instead
+          log.warning("loading of cuvs index of field=\"" + field + "\" rejected: " + e);
+        }
+      }
     }
     return indices;
   }
 
-  private CuVSIndex loadCuVSIndex(FieldEntry fieldEntry) throws IOException {
-    CagraIndex cagraIndex = null;
-    BruteForceIndex bruteForceIndex = null;
-    HnswIndex hnswIndex = null;
-
-    try {
-      long len = fieldEntry.cagraIndexLength();
-      if (len > 0) {
-        long off = fieldEntry.cagraIndexOffset();
-        try (var slice = cuvsIndexInput.slice("cagra index", off, len);
-            var in = new IndexInputInputStream(slice)) {
-          cagraIndex = CagraIndex.newBuilder(resources).from(in).build();
+  private IntObjectHashMap<CagraGraph> readCagraGraphs() throws IOException {
+    var graphs = new IntObjectHashMap<CagraGraph>();
+    if (resources != null) {
+      return graphs;
+    }
+    for (var e : fields) {
+      FieldEntry fieldEntry = e.value;
+      if (fieldEntry.cagraIndexLength() > 0) {
+        try (var slice =
+            indexSlice(
+                "cagra index", fieldEntry.cagraIndexOffset(), fieldEntry.cagraIndexLength())) {
+          CagraGraph graph = CagraGraph.read(slice);
+          if (graph.size != fieldEntry.count()) {
+            throw new CorruptIndexException(
+                "cagra graph of " + graph.size + " nodes, expected: " + fieldEntry.count(), slice);
+          }
+          graphs.put(e.key, graph);
         }
       }
+    }
+    return graphs;
+  }
 
-      len = fieldEntry.bruteForceIndexLength();
-      if (len > 0) {
-        long off = fieldEntry.bruteForceIndexOffset();
-        try (var slice = cuvsIndexInput.slice("bf index", off, len);
-            var in = new IndexInputInputStream(slice)) {
-          bruteForceIndex = BruteForceIndex.newBuilder(resources).from(in).build();
-        }
+  private void loadInBackground(String field, LazyCuVSIndex lazyIndex) {
+    try {
+      lazyIndex.get();
+    } catch (Throwable t) {
+      // Unless the reader got closed meanwhile, the first search attempts the load again, and
+      // surfaces the failure
+      if (lazyIndex.isClosed() == false) {
+        log.log(Level.WARNING, "failed to load cuvs index of field=\"" + field + "\"", t);
       }
+    }
+  }
 
-      len = fieldEntry.hnswIndexLength();
-      if (len > 0) {
-        long off = fieldEntry.hnswIndexOffset();
-        try (var slice = cuvsIndexInput.slice("hnsw index", off, len);
-            var in = new IndexInputInputStream(slice)) {
-          var params = new HnswIndexParams.Builder().build();
-          hnswIndex = HnswIndex.newBuilder(resources).withIndexParams(params).from(in).build();
-        }
+  private CuVSIndex loadCuVSIndex(int fieldNumber, FieldEntry fieldEntry) throws IOException {
+    long waitStartTime = System.nanoTime();
+    try {
+      indexLoadPermits.acquire();
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException(e);
+    }
+    try {
+      long startTime = System.nanoTime();
+      CuVSIndex index = loadCuVSIndexUnbounded(fieldEntry);
+      long endTime = System.nanoTime();
+      info(
+          "loaded cuvs index of segment="
+              + segmentName
+              + " field=\""
+              + fieldInfos.fieldInfo(fieldNumber).name
+              + "\" in "
+              + CuVSVectorsWriter.nanosToMillis(endTime - startTime)
+              + "ms, after waiting "
+              + CuVSVectorsWriter.nanosToMillis(startTime - waitStartTime)
+              + "ms");
+      return index;
+    } finally {
+      indexLoadPermits.release();
+    }
+  }
+
+  private CuVSIndex loadCuVSIndexUnbounded(FieldEntry fieldEntry) throws IOException {
+    // the indices of the field are placed on a slot of the pool, if any, and loaded under a lease
+    return CuVSIndex.load(
+        resources,
+        resourcesPool,
+        r -> {
+          long len = fieldEntry.cagraIndexLength();
+          if (len == 0) {
+            return null;
+          }
+          try (var slice = indexSlice("cagra index", fieldEntry.cagraIndexOffset(), len);
+              var in = MemorySegmentInputStream.of(slice)) {
+            return CagraIndex.newBuilder(r).from(in).build();
+          }
+        },
+        r -> {
+          long len = fieldEntry.bruteForceIndexLength();
+          if (len == 0) {
+            return null;
+          }
+          try (var slice = indexSlice("bf index", fieldEntry.bruteForceIndexOffset(), len);
+              var in = MemorySegmentInputStream.of(slice)) {
+            return BruteForceIndex.newBuilder(r).from(in).build();
+          }
+        },
+        r -> {
+          long len = fieldEntry.hnswIndexLength();
+          if (len == 0) {
+            return null;
+          }
+          try (var slice = indexSlice("hnsw index", fieldEntry.hnswIndexOffset(), len);
+              var in = MemorySegmentInputStream.of(slice)) {
+            var params = new HnswIndexParams.Builder().build();
+            return HnswIndex.newBuilder(r).withIndexParams(params).from(in).build();
+          }
+        });
+  }
+
+  private static void info(String msg) {
+    InfoStream infoStream = InfoStream.getDefault();
+    if (infoStream.isEnabled(CUVS_COMPONENT)) {
+      infoStream.message(CUVS_COMPONENT, msg);
+    }
+  }
+
+  /**
+   * Returns how long loading the CuVS index of the given field took, in nanoseconds, or -1 if it
+   * is not loaded (yet).
+   */
+  long indexLoadNanos(String field) {
+    FieldInfo info = fieldInfos.fieldInfo(field);
+    LazyCuVSIndex lazyIndex = info == null ? null : cuvsIndices.get(info.number);
+    return lazyIndex == null ? -1L : lazyIndex.loadNanos();
+  }
+
+  /** Returns the degree of the graph of the Cagra index of the given field, or -1 if none. */
+  int cagraGraphDegree(String field) throws IOException {
+    FieldInfo info = fieldInfos.fieldInfo(field);
+    FieldEntry fieldEntry = info == null ? null : fields.get(info.number);
+    if (fieldEntry == null || fieldEntry.cagraIndexLength() == 0) {
+      return -1;
+    }
+    try (var slice =
+        indexSlice("cagra index", fieldEntry.cagraIndexOffset(), fieldEntry.cagraIndexLength())) {
+      return CagraGraph.read(slice).degree;
+    }
+  }
+
+  /**
+   * Acquires the CuVS index of the given field, loading it if needed. The returned handle must be
+   * closed once the search is done.
+   */
+  private CuVSIndexCache.Handle acquireIndex(int fieldNumber, FieldEntry fieldEntry)
+      throws IOException {
+    if (indexCache != null) {
+      return indexCache.acquire(
+          this,
+          fieldNumber,
+          fieldEntry.indexSizeInBytes(),
+          () -> loadCuVSIndex(fieldNumber, fieldEntry));
+    }
+    LazyCuVSIndex lazyIndex = cuvsIndices.get(fieldNumber);
+    if (lazyIndex == null) {
+      throw new IllegalStateException(
+          "not index found for field:" + fieldInfos.fieldInfo(fieldNumber).name);
+    }
+    return CuVSIndexCache.Handle.uncached(lazyIndex.get());
+  }
+
+  private IntObjectHashMap<CuVSQueryCoalescer<CuVSSearchResult>> createCoalescers() {
+    var coalescers = new IntObjectHashMap<CuVSQueryCoalescer<CuVSSearchResult>>();
+    long windowNanos = CuVSVectorsFormat.coalesceWindowNanos();
+    int maxBatchSize = CuVSVectorsFormat.coalesceMaxBatchSize();
+    if (resources != null && windowNanos > 0 && maxBatchSize > 1) {
+      for (var e : fields) {
+        int fieldNumber = e.key;
+        FieldEntry fieldEntry = e.value;
+        CuVSQueryCoalescer.BatchSearcher<CuVSSearchResult> batchSearcher =
+            (queries, topK) -> {
+              try (var handle = acquireIndex(fieldNumber, fieldEntry)) {
+                return searchIndex(
+                    handle.index(),
+                    queries,
+                    topK,
+                    CuVSSearchStrategy.DEFAULT,
+                    null,
+                    fieldEntry.count());
+              }
+            };
+        coalescers.put(
+            fieldNumber, new CuVSQueryCoalescer<>(batchSearcher, windowNanos, maxBatchSize));
       }
-    } catch (Throwable t) {
-      handleThrowable(t);
     }
-    return new CuVSIndex(cagraIndex, bruteForceIndex, hnswIndex);
+    return coalescers;
   }
 
   @Override
   public void close() throws IOException {
-    var closeableStream =
-        Stream.concat(
-            Stream.of(flatVectorsReader, cuvsIndexInput),
-            stream(cuvsIndices.values().iterator()).map(cursor -> cursor.value));
+    Stream<Closeable> indices =
+        cuvsIndices == null
+            ? Stream.empty()
+            : stream(cuvsIndices.values().iterator()).map(cursor -> cursor.value);
+    if (indexCache != null) {
+      indices = Stream.of(() -> indexCache.invalidate(this));
+    }
+    // the indices first, as closing them waits for loads in progress, that read the input
+    var closeableStream = Stream.concat(indices, Stream.of(flatVectorsReader, cuvsIndexInput));
     IOUtils.close(closeableStream::iterator);
   }
 
@@ -289,9 +529,38 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     return StreamSupport.stream(((Iterable<T>) () -> iterator).spliterator(), false);
   }
 
+  // The maximum size of the regions of the index file that are checksummed by a task
+  static final long CHECKSUM_REGION_SIZE = 1L << 28;
+
+  /**
+   * Verifies the checksums of the raw vectors and of the index file. The regions of large index
+   * files, each index and at most {@link #CHECKSUM_REGION_SIZE} bytes, are checksummed concurrently
+   * on the {@link CuVSVectorsFormat#setChecksumExecutor checksum executor}.
+   */
   @Override
   public void checkIntegrity() throws IOException {
-    // TODO: Pending implementation
+    flatVectorsReader.checkIntegrity();
+    if (cuvsIndexInput.length() <= CHECKSUM_REGION_SIZE) {
+      CodecUtil.checksumEntireFile(cuvsIndexInput);
+      return;
+    }
+    var boundaries = new ArrayList<Long>();
+    for (var e : fields) {
+      e.value.addRegions(boundaries);
+    }
+    long length = cuvsIndexInput.length();
+    for (long pos = CHECKSUM_REGION_SIZE; pos < length; pos += CHECKSUM_REGION_SIZE) {
+      boundaries.add(pos);
+    }
+    long[] sorted = boundaries.stream().mapToLong(Long::longValue).sorted().toArray();
+    Checksums.checksumEntireFile(cuvsIndexInput, sorted, checksumExecutor);
+  }
+
+  private static void addRegion(List<Long> boundaries, long offset, long length) {
+    if (length > 0) {
+      boundaries.add(offset);
+      boundaries.add(offset + length);
+    }
   }
 
   @Override
@@ -300,8 +569,8 @@ public class CuVSVectorsReader extends KnnVectorsReader {
   }
 
   @Override
-  public ByteVectorValues getByteVectorValues(String field) {
-    throw new UnsupportedOperationException("byte vectors not supported");
+  public ByteVectorValues getByteVectorValues(String field) throws IOException {
+    return flatVectorsReader.getByteVectorValues(field);
   }
 
   /** Native float to float function */
@@ -317,99 +586,505 @@ public class CuVSVectorsReader extends KnnVectorsReader {
     }
   }
 
+  /**
+   * Returns the function of the score of a hit of the GPU indices, from its distance. The indices
+   * are built, and searched, with the squared euclidean distance, whatever the similarity of the
+   * field, so this is only the score of {@link VectorSimilarityFunction#EUCLIDEAN} fields. The hits
+   * of other fields are rescored against the raw vectors instead, see {@link
+   * #rescoresGpuHits(VectorSimilarityFunction)}.
+   */
   static FloatToFloatFunction getScoreNormalizationFunc(VectorSimilarityFunction sim) {
-    // TODO: check for different similarities
     return score -> (1f / (1f + score));
   }
 
-  // This is a hack - https://github.com/rapidsai/cuvs/issues/696
-  static final int FILTER_OVER_SAMPLE = 10;
+  /**
+   * Returns whether the hits of the GPU indices of a field of the given similarity are rescored
+   * against the raw vectors, for their scores to be those of the field's similarity, as when the
+   * vectors are scored on the CPU. Otherwise, whether a query is searched on the GPU or the CPU,
+   * which depends on the selectivity of its filter, would change the scores of its hits.
+   */
+  static boolean rescoresGpuHits(VectorSimilarityFunction sim) {
+    return sim != VectorSimilarityFunction.EUCLIDEAN;
+  }
 
   @Override
   public void search(String field, float[] target, KnnCollector knnCollector, Bits acceptDocs)
       throws IOException {
+    search(field, new float[][] {target}, new KnnCollector[] {knnCollector}, acceptDocs);
+  }
+
+  /**
+   * Searches the nearest vectors of each of the given targets, with a single query dispatched to
+   * the GPU for all targets. The results for {@code targets[i]} are collected into {@code
+   * knnCollectors[i]}. The search parameters are taken from the {@link CuVSSearchStrategy} of the
+   * first collector, if any.
+   *
+   * @param field the vector field to search
+   * @param targets the query vectors
+   * @param knnCollectors the collectors, one per query vector
+   * @param acceptDocs {@link Bits} that represents the allowed documents to match, or {@code null}
+   *     if they are all allowed to match.
+   */
+  public void search(
+      String field, float[][] targets, KnnCollector[] knnCollectors, Bits acceptDocs)
+      throws IOException {
+    if (targets.length != knnCollectors.length) {
+      throw new IllegalArgumentException(
+          "expected one collector per target, got targets="
+              + targets.length
+              + ", collectors="
+              + knnCollectors.length);
+    }
     var fieldEntry = getFieldEntry(field, VectorEncoding.FLOAT32);
-    if (fieldEntry.count() == 0 || knnCollector.k() == 0) {
+    search(
+        field,
+        fieldEntry,
+        targets,
+        i -> flatVectorsReader.getRandomVectorScorer(field, targets[i]),
+        knnCollectors,
+        acceptDocs);
+  }
+
+  /**
+   * Searches the nearest vectors of each of the given byte targets, as {@link #search(String,
+   * float[][], KnnCollector[], Bits)}. The targets are searched as floats on the GPU, whose
+   * indices are built from the byte vectors as floats, and as bytes on the CPU.
+   */
+  public void search(String field, byte[][] targets, KnnCollector[] knnCollectors, Bits acceptDocs)
+      throws IOException {
+    if (targets.length != knnCollectors.length) {
+      throw new IllegalArgumentException(
+          "expected one collector per target, got targets="
+              + targets.length
+              + ", collectors="
+              + knnCollectors.length);
+    }
+    var fieldEntry = getFieldEntry(field, VectorEncoding.BYTE);
+    float[][] floatTargets = new float[targets.length][];
+    for (int i = 0; i < targets.length; i++) {
+      floatTargets[i] = CuVSVectorsWriter.toFloatVector(targets[i]);
+    }
+    search(
+        field,
+        fieldEntry,
+        floatTargets,
+        i -> flatVectorsReader.getRandomVectorScorer(field, targets[i]),
+        knnCollectors,
+        acceptDocs);
+  }
+
+  /** Supplies a new scorer of the raw vectors, for the target of the given index. */
+  @FunctionalInterface
+  private interface TargetScorerSupplier {
+    RandomVectorScorer get(int target) throws IOException;
+  }
+
+  private void search(
+      String field,
+      FieldEntry fieldEntry,
+      float[][] targets,
+      TargetScorerSupplier scorers,
+      KnnCollector[] knnCollectors,
+      Bits acceptDocs)
+      throws IOException {
+    int maxK = 0;
+    for (KnnCollector knnCollector : knnCollectors) {
+      maxK = Math.max(maxK, knnCollector.k());
+    }
+    if (fieldEntry.count() == 0 || maxK == 0 || targets.length == 0) {
       return;
     }
 
     var fieldNumber = fieldInfos.fieldInfo(field).number;
     // log.info("fieldNumber=" + fieldNumber + ", fieldEntry.count()=" + fieldEntry.count());
 
-    CuVSIndex cuvsIndex = cuvsIndices.get(fieldNumber);
-    if (cuvsIndex == null) {
-      throw new IllegalStateException("not index found for field:" + field);
+    final KnnVectorValues rawValues =
+        switch (fieldEntry.vectorEncoding) {
+          case BYTE -> flatVectorsReader.getByteVectorValues(field);
+          case FLOAT32 -> flatVectorsReader.getFloatVectorValues(field);
+        };
+    final Bits acceptedOrds = rawValues.getAcceptOrds(acceptDocs);
+    final var ordToDocFunction = (IntToIntFunction) rawValues::ordToDoc;
+    final var scoreCorrectionFunction = getScoreNormalizationFunc(fieldEntry.similarityFunction);
+
+    BitSet prefilter = null;
+    int numAccepted = fieldEntry.count();
+    if (acceptedOrds != null) {
+      prefilter = BitSet.valueOf(bitsToLongArray(acceptedOrds));
+      numAccepted = prefilter.cardinality();
+      if (numAccepted == 0) {
+        return;
+      }
+    }
+
+    final CuVSSearchStrategy strategy = CuVSSearchStrategy.of(knnCollectors[0].getSearchStrategy());
+    final boolean selectiveFilter =
+        prefilter != null && numAccepted <= Math.max(exactSearchThreshold, maxK);
+    // Select candidates by their quantized vectors, and rescore them exactly
+    if (fieldEntry.binaryIndexLength() > 0 && selectiveFilter == false) {
+      for (int i = 0; i < targets.length; i++) {
+        binaryQuantizedSearch(fieldEntry, targets[i], scorers.get(i), knnCollectors[i], prefilter);
+      }
+      return;
     }
 
-    int collectorTopK = knnCollector.k();
-    if (acceptDocs != null) {
-      collectorTopK = knnCollector.k() * FILTER_OVER_SAMPLE;
+    // Score the vectors of the lists of the closest centroids
+    if (fieldEntry.ivfFlatIndexLength() > 0 && selectiveFilter == false) {
+      int nProbes = strategy.nProbes() > 0 ? strategy.nProbes() : IvfFlatIndex.DEFAULT_NPROBES;
+      for (int i = 0; i < targets.length; i++) {
+        try (var slice =
+            indexSlice(
+                "ivf-flat index",
+                fieldEntry.ivfFlatIndexOffset(),
+                fieldEntry.ivfFlatIndexLength())) {
+          IvfFlatIndex.search(
+              slice,
+              fieldEntry.similarityFunction(),
+              targets[i],
+              nProbes,
+              scorers.get(i),
+              knnCollectors[i],
+              acceptedOrds);
+        }
+      }
+      return;
+    }
+
+    // Without a GPU, traverse the CAGRA graph on the CPU
+    CagraGraph cagraGraph = cagraGraphs.get(fieldNumber);
+    if (cagraGraph != null && selectiveFilter == false) {
+      for (int i = 0; i < targets.length; i++) {
+        RandomVectorScorer scorer = scorers.get(i);
+        graphSearch(fieldEntry, cagraGraph, scorer, knnCollectors[i], acceptedOrds, strategy);
+      }
+      return;
+    }
+
+    // Score the accepted vectors exactly on the CPU, without a GPU or an index to search, or
+    // for selective filters, which are cheaper to score than to search on the GPU
+    if (resources == null || fieldEntry.hasGpuIndex() == false || selectiveFilter) {
+      exactSearch(scorers, knnCollectors, prefilter, fieldEntry.count());
+      return;
+    }
+
+    // The hits of compressed indices are refined against the raw vectors
+    final boolean refine = fieldEntry.compressed() && compressedRefinement > 0;
+    // The hits of fields that are not euclidean are rescored against the raw vectors
+    final boolean rescore = refine || rescoresGpuHits(fieldEntry.similarityFunction());
+
+    // batches are searched with the default parameters
+    var coalescer =
+        strategy.equals(CuVSSearchStrategy.DEFAULT) && refine == false
+            ? coalescers.get(fieldNumber)
+            : null;
+    // Batches are shared by concurrent searches, so only the searches without a filter are
+    // coalesced, filtered searches pass their filter to the GPU as a prefilter below
+    if (coalescer != null && targets.length == 1 && acceptedOrds == null) {
+      KnnCollector knnCollector = knnCollectors[0];
+      int wanted = Math.min(knnCollector.k(), numAccepted);
+      // within the limit of cagra searches, as the index may have no brute force index
+      int maxTopK = Math.min(numAccepted, MAX_CAGRA_TOP_K);
+      int topK = wanted;
+      CuVSSearchResult result = topK <= maxTopK ? coalescer.search(targets[0], topK) : null;
+      // re-issue with a larger topK, while the graph search returns fewer hits than wanted
+      while (result != null && result.size() < wanted && topK < maxTopK) {
+        topK = Math.min(maxTopK, topK * 2);
+        result = coalescer.search(targets[0], topK);
+      }
+      if (result != null && result.size() >= wanted) {
+        if (rescore) {
+          refine(result, knnCollector, null, scorers.get(0));
+        } else {
+          collect(result, knnCollector, null, ordToDocFunction, scoreCorrectionFunction);
+        }
+        return;
+      }
+      // otherwise searched on its own
+    }
+
+    int topK = Math.min(maxK, numAccepted);
+    if (refine) {
+      // over-fetch the candidates, within the limit of cagra searches
+      long candidates = Math.min((long) maxK * compressedRefinement, MAX_CAGRA_TOP_K);
+      topK = (int) Math.min(Math.max(topK, candidates), numAccepted);
     }
-    final int topK = Math.min(collectorTopK, fieldEntry.count());
     assert topK > 0 : "Expected topK > 0, got:" + topK;
+    List<CuVSSearchResult> results;
+    try (var handle = acquireIndex(fieldNumber, fieldEntry)) {
+      results = searchIndex(handle.index(), targets, topK, strategy, prefilter, fieldEntry.count());
+    }
+    // List expected to have one entry per query vector
+    assert results != null && results.size() == targets.length;
 
-    Map<Integer, Float> result;
-    if (knnCollector.k() <= 1024 && cuvsIndex.getCagraIndex() != null) {
-      // log.info("searching cagra index");
-      CagraSearchParams searchParams =
-          new CagraSearchParams.Builder(resources)
-              .withItopkSize(topK) // TODO: params
-              .withSearchWidth(1)
-              .build();
-
-      var query =
-          new CagraQuery.Builder()
-              .withTopK(topK)
-              .withSearchParams(searchParams)
-              // we don't use ord to doc mapping, https://github.com/rapidsai/cuvs/issues/699
-              .withMapping(null)
-              .withQueryVectors(new float[][] {target})
-              .build();
-
-      CagraIndex cagraIndex = cuvsIndex.getCagraIndex();
-      List<Map<Integer, Float>> searchResult = null;
-      try {
-        searchResult = cagraIndex.search(query).getResults();
-      } catch (Throwable t) {
-        handleThrowable(t);
+    for (int i = 0; i < targets.length; i++) {
+      var collector = knnCollectors[i];
+      if (rescore) {
+        refine(results.get(i), collector, acceptedOrds, scorers.get(i));
+      } else {
+        collect(results.get(i), collector, acceptedOrds, ordToDocFunction, scoreCorrectionFunction);
       }
-      // List expected to have only one entry because of single query "target".
-      assert searchResult.size() == 1;
-      result = searchResult.getFirst();
-    } else {
-      BruteForceIndex bruteforceIndex = cuvsIndex.getBruteforceIndex();
-      assert bruteforceIndex != null;
-      // log.info("searching brute index, with actual topK=" + topK);
-      var queryBuilder =
-          new BruteForceQuery.Builder().withQueryVectors(new float[][] {target}).withTopK(topK);
-      BruteForceQuery query = queryBuilder.build();
-
-      List<Map<Integer, Float>> searchResult = null;
-      try {
-        searchResult = bruteforceIndex.search(query).getResults();
-      } catch (Throwable t) {
-        handleThrowable(t);
+    }
+  }
+
+  /** Collects the hits of the given result, with their exact scores. */
+  private static void refine(
+      CuVSSearchResult result,
+      KnnCollector knnCollector,
+      Bits acceptedOrds,
+      RandomVectorScorer scorer)
+      throws IOException {
+    for (int i = 0; i < result.size(); i++) {
+      int ord = result.ord(i);
+      if (acceptedOrds == null || acceptedOrds.get(ord)) {
+        if (knnCollector.earlyTerminated()) {
+          break;
+        }
+        knnCollector.incVisitedCount(1);
+        knnCollector.collect(scorer.ordToDoc(ord), scorer.score(ord));
       }
-      assert searchResult.size() == 1;
-      result = searchResult.getFirst();
     }
-    assert result != null;
+  }
 
-    final var rawValues = flatVectorsReader.getFloatVectorValues(field);
-    final Bits acceptedOrds = rawValues.getAcceptOrds(acceptDocs);
-    final var ordToDocFunction = (IntToIntFunction) rawValues::ordToDoc;
-    final var scoreCorrectionFunction = getScoreNormalizationFunc(fieldEntry.similarityFunction);
+  // The default number of candidates kept by graph searches on the CPU, as cuVS' itopk_size
+  static final int DEFAULT_CPU_ITOPK = 64;
+
+  /**
+   * Searches the CAGRA graph on the CPU, with the searcher of Lucene's HNSW graphs. The search
+   * keeps the best {@code max(k, iTopK)} candidates, and collects the top k of them.
+   */
+  private void graphSearch(
+      FieldEntry fieldEntry,
+      CagraGraph cagraGraph,
+      RandomVectorScorer scorer,
+      KnnCollector knnCollector,
+      Bits acceptedOrds,
+      CuVSSearchStrategy strategy)
+      throws IOException {
+    int iTopK = strategy.iTopK() > 0 ? strategy.iTopK() : DEFAULT_CPU_ITOPK;
+    var candidates =
+        new PerLeafCuVSKnnCollector(
+            Math.max(knnCollector.k(), iTopK), knnCollector.visitLimit(), strategy);
+    try (var slice =
+        indexSlice("cagra index", fieldEntry.cagraIndexOffset(), fieldEntry.cagraIndexLength())) {
+      HnswGraphSearcher.search(scorer, candidates, cagraGraph.open(slice), acceptedOrds);
+    }
+    if (candidates.visitedCount() > 0) {
+      knnCollector.incVisitedCount(Math.toIntExact(candidates.visitedCount()));
+    }
+    // the searcher maps the ordinals of the candidates to their docs, so the candidates are
+    // collected by doc, and sorted by decreasing score
+    ScoreDoc[] scoreDocs = candidates.topDocs().scoreDocs;
+    for (int i = 0; i < Math.min(knnCollector.k(), scoreDocs.length); i++) {
+      knnCollector.collect(scoreDocs[i].doc, scoreDocs[i].score);
+    }
+  }
+
+  /**
+   * Searches the binary quantized index: selects the {@code oversample * k} candidates of the
+   * lowest hamming distances, and collects them with their exact scores.
+   */
+  private void binaryQuantizedSearch(
+      FieldEntry fieldEntry,
+      float[] target,
+      RandomVectorScorer scorer,
+      KnnCollector knnCollector,
+      BitSet acceptedOrds)
+      throws IOException {
+    int numCandidates =
+        (int) Math.min(fieldEntry.count(), (long) knnCollector.k() * binaryQuantizedOversample);
+    var candidates =
+        new PerLeafCuVSKnnCollector(
+            numCandidates, knnCollector.visitLimit(), CuVSSearchStrategy.DEFAULT);
+    try (var codes =
+        indexSlice(
+            "binary quantized index",
+            fieldEntry.binaryIndexOffset(),
+            fieldEntry.binaryIndexLength())) {
+      // the codes are scored by ordinal, and the slices are scored concurrently on the executor
+      exactSearch(
+          t -> BinaryQuantizedIndex.scorer(codes, fieldEntry.count(), target),
+          new KnnCollector[] {candidates},
+          acceptedOrds,
+          fieldEntry.count());
+    }
+    if (candidates.visitedCount() > 0) {
+      knnCollector.incVisitedCount(Math.toIntExact(candidates.visitedCount()));
+    }
+    for (ScoreDoc candidate : candidates.topDocs().scoreDocs) {
+      int ord = candidate.doc;
+      knnCollector.collect(scorer.ordToDoc(ord), scorer.score(ord));
+    }
+  }
+
+  // The minimum number of vectors scored by a task, when scoring on the cpu search executor
+  static final int MIN_EXACT_SEARCH_SLICE_SIZE = 1 << 14;
+
+  /**
+   * Scores the accepted vectors exactly, with the scorer of the flat vectors reader. With a cpu
+   * search executor, large segments are split in slices that are scored concurrently.
+   *
+   * @param acceptedOrds the accepted ordinals, or null if they are all accepted
+   * @param count the number of vectors
+   */
+  private void exactSearch(
+      TargetScorerSupplier scorers, KnnCollector[] knnCollectors, BitSet acceptedOrds, int count)
+      throws IOException {
+    int numSlices =
+        cpuSearchExecutor == null ? 1 : Math.max(1, count / MIN_EXACT_SEARCH_SLICE_SIZE);
+    for (int i = 0; i < knnCollectors.length; i++) {
+      final int target = i;
+      final KnnCollector knnCollector = knnCollectors[i];
+      if (numSlices == 1) {
+        exactSearch(scorers.get(target), knnCollector, acceptedOrds, 0, count);
+        continue;
+      }
+      List<Callable<TopDocs>> tasks = new ArrayList<>(numSlices);
+      for (int slice = 0; slice < numSlices; slice++) {
+        final int from = (int) ((long) count * slice / numSlices);
+        final int to = (int) ((long) count * (slice + 1) / numSlices);
+        tasks.add(
+            () -> {
+              var sliceCollector = new PerLeafCuVSKnnCollector(knnCollector.k());
+              // a scorer per slice, as scorers are not thread safe
+              exactSearch(scorers.get(target), sliceCollector, acceptedOrds, from, to);
+              return sliceCollector.topDocs();
+            });
+      }
+      for (TopDocs topDocs : cpuSearchExecutor.invokeAll(tasks)) {
+        if (topDocs.totalHits.value() > 0) {
+          knnCollector.incVisitedCount(Math.toIntExact(topDocs.totalHits.value()));
+        }
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+          knnCollector.collect(scoreDoc.doc, scoreDoc.score);
+        }
+      }
+    }
+  }
+
+  /** Scores the accepted vectors, of ordinals in [from, to), into the given collector. */
+  private static void exactSearch(
+      RandomVectorScorer scorer, KnnCollector knnCollector, BitSet acceptedOrds, int from, int to)
+      throws IOException {
+    to = Math.min(to, scorer.maxOrd());
+    if (acceptedOrds == null) {
+      for (int ord = from; ord < to && knnCollector.earlyTerminated() == false; ord++) {
+        knnCollector.incVisitedCount(1);
+        knnCollector.collect(scorer.ordToDoc(ord), scorer.score(ord));
+      }
+      return;
+    }
+    for (int ord = acceptedOrds.nextSetBit(from);
+        ord >= 0 && ord < to;
+        ord = acceptedOrds.nextSetBit(ord + 1)) {
+      if (knnCollector.earlyTerminated()) {
+        break;
+      }
+      knnCollector.incVisitedCount(1);
+      knnCollector.collect(scorer.ordToDoc(ord), scorer.score(ord));
+    }
+  }
+
+  // CAGRA supports a topK of at most 1024
+  static final int MAX_CAGRA_TOP_K = 1024;
+
+  private List<CuVSSearchResult> searchIndex(
+      CuVSIndex cuvsIndex,
+      float[][] targets,
+      int topK,
+      CuVSSearchStrategy strategy,
+      BitSet prefilter,
+      int count)
+      throws IOException {
+    CagraIndex cagraIndex = cuvsIndex.getCagraIndex();
+    BruteForceIndex bruteforceIndex = cuvsIndex.getBruteforceIndex();
+    // search with the resources the index is loaded with, leasing them if they are of a pool
+    try (var lease = cuvsIndex.acquireResources()) {
+      if (cagraIndex != null && (topK <= MAX_CAGRA_TOP_K || bruteforceIndex == null)) {
+        CuVSResources indexResources =
+            cuvsIndex.getResources() == null ? resources : cuvsIndex.getResources();
+        return searchCagra(cagraIndex, indexResources, targets, topK, strategy, prefilter, count);
+      } else {
+        assert bruteforceIndex != null;
+        return searchBruteForce(bruteforceIndex, targets, topK, prefilter, count);
+      }
+    }
+  }
+
+  private List<CuVSSearchResult> searchCagra(
+      CagraIndex cagraIndex,
+      CuVSResources resources,
+      float[][] targets,
+      int topK,
+      CuVSSearchStrategy strategy,
+      BitSet prefilter,
+      int count)
+      throws IOException {
+    // log.info("searching cagra index");
+    CagraSearchParams searchParams =
+        new CagraSearchParams.Builder(resources)
+            .withItopkSize(Math.max(strategy.iTopK(), topK))
+            .withSearchWidth(strategy.searchWidth())
+            .withMaxIterations(strategy.maxIterations())
+            .withAlgo(strategy.searchAlgo())
+            .build();
+
+    var queryBuilder =
+        new CagraQuery.Builder()
+            .withTopK(topK)
+            .withSearchParams(searchParams)
+            // we don't use ord to doc mapping, https://github.com/rapidsai/cuvs/issues/699
+            .withMapping(null)
+            .withQueryVectors(targets);
+    if (prefilter != null) {
+      queryBuilder.withPrefilter(prefilter, count);
+    }
+    CagraQuery query = queryBuilder.build();
+
+    List<Map<Integer, Float>> searchResult = null;
+    try {
+      searchResult = cagraIndex.search(query).getResults();
+    } catch (Throwable t) {
+      handleThrowable(t);
+    }
+    return CuVSSearchResult.fromMaps(searchResult, count);
+  }
+
+  private List<CuVSSearchResult> searchBruteForce(
+      BruteForceIndex bruteforceIndex, float[][] targets, int topK, BitSet prefilter, int count)
+      throws IOException {
+    // log.info("searching brute index, with actual topK=" + topK);
+    var queryBuilder = new BruteForceQuery.Builder().withQueryVectors(targets).withTopK(topK);
+    if (prefilter != null) {
+      // one filter per query vector
+      BitSet[] prefilters = new BitSet[targets.length];
+      Arrays.fill(prefilters, prefilter);
+      queryBuilder.withPrefilter(prefilters, count);
+    }
+    BruteForceQuery query = queryBuilder.build();
+
+    List<Map<Integer, Float>> searchResult = null;
+    try {
+      searchResult = bruteforceIndex.search(query).getResults();
+    } catch (Throwable t) {
+      handleThrowable(t);
+    }
+    return CuVSSearchResult.fromMaps(searchResult, count);
+  }
 
-    for (var entry : result.entrySet()) {
-      int ord = entry.getKey();
-      float score = entry.getValue();
+  private static void collect(
+      CuVSSearchResult result,
+      KnnCollector knnCollector,
+      Bits acceptedOrds,
+      IntToIntFunction ordToDocFunction,
+      FloatToFloatFunction scoreCorrectionFunction) {
+    for (int i = 0; i < result.size(); i++) {
+      int ord = result.ord(i);
       if (acceptedOrds == null || acceptedOrds.get(ord)) {
         if (knnCollector.earlyTerminated()) {
           break;
         }
-        assert ord >= 0 : "unexpected ord: " + ord;
         int doc = ordToDocFunction.apply(ord);
-        float correctedScore = scoreCorrectionFunction.apply(score);
+        float correctedScore = scoreCorrectionFunction.apply(result.distance(i));
         knnCollector.incVisitedCount(1);
         knnCollector.collect(doc, correctedScore);
       }
@@ -419,7 +1094,7 @@ public class CuVSVectorsReader extends KnnVectorsReader {
   @Override
   public void search(String field, byte[] target, KnnCollector knnCollector, Bits acceptDocs)
       throws IOException {
-    throw new UnsupportedOperationException("byte vectors not supported");
+    search(field, new byte[][] {target}, new KnnCollector[] {knnCollector}, acceptDocs);
   }
 
   record FieldEntry(
@@ -432,12 +1107,143 @@ public class CuVSVectorsReader extends KnnVectorsReader {
       long bruteForceIndexOffset,
       long bruteForceIndexLength,
       long hnswIndexOffset,
-      long hnswIndexLength) {
+      long hnswIndexLength,
+      long binaryIndexOffset,
+      long binaryIndexLength,
+      boolean compressed,
+      long ivfFlatIndexOffset,
+      long ivfFlatIndexLength) {
+
+    /** Whether the field has an index that can be searched on the GPU. */
+    boolean hasGpuIndex() {
+      return cagraIndexLength > 0 || bruteForceIndexLength > 0;
+    }
+
+    /** Returns the size of the serialized indices, as an estimate of their size on the device. */
+    long indexSizeInBytes() {
+      return cagraIndexLength + bruteForceIndexLength + hnswIndexLength;
+    }
+
+    void addRegions(List<Long> boundaries) {
+      addRegion(boundaries, cagraIndexOffset, cagraIndexLength);
+      addRegion(boundaries, bruteForceIndexOffset, bruteForceIndexLength);
+      addRegion(boundaries, hnswIndexOffset, hnswIndexLength);
+      addRegion(boundaries, binaryIndexOffset, binaryIndexLength);
+      addRegion(boundaries, ivfFlatIndexOffset, ivfFlatIndexLength);
+    }
+
+    /** Returns the entry of the given field, of the given number of vectors, without indices. */
+    static FieldEntry of(FieldInfo info, int count) {
+      return new FieldEntry(
+          info.getVectorEncoding(),
+          info.getVectorSimilarityFunction(),
+          info.getVectorDimension(),
+          count,
+          0L,
+          0L,
+          0L,
+          0L,
+          0L,
+          0L,
+          0L,
+          0L,
+          false,
+          0L,
+          0L);
+    }
+
+    /** Returns this entry, with the given Cagra, Brute Force and HNSW indices. */
+    FieldEntry withGpuIndices(
+        long cagraIndexOffset,
+        long cagraIndexLength,
+        long bruteForceIndexOffset,
+        long bruteForceIndexLength,
+        long hnswIndexOffset,
+        long hnswIndexLength,
+        boolean compressed) {
+      return new FieldEntry(
+          vectorEncoding,
+          similarityFunction,
+          dims,
+          count,
+          cagraIndexOffset,
+          cagraIndexLength,
+          bruteForceIndexOffset,
+          bruteForceIndexLength,
+          hnswIndexOffset,
+          hnswIndexLength,
+          binaryIndexOffset,
+          binaryIndexLength,
+          compressed,
+          ivfFlatIndexOffset,
+          ivfFlatIndexLength);
+    }
+
+    /** Returns this entry, with the given binary quantized index. */
+    FieldEntry withBinaryIndex(long binaryIndexOffset, long binaryIndexLength) {
+      return new FieldEntry(
+          vectorEncoding,
+          similarityFunction,
+          dims,
+          count,
+          cagraIndexOffset,
+          cagraIndexLength,
+          bruteForceIndexOffset,
+          bruteForceIndexLength,
+          hnswIndexOffset,
+          hnswIndexLength,
+          binaryIndexOffset,
+          binaryIndexLength,
+          compressed,
+          ivfFlatIndexOffset,
+          ivfFlatIndexLength);
+    }
+
+    /** Returns this entry, with the given IVF-Flat index. */
+    FieldEntry withIvfFlatIndex(long ivfFlatIndexOffset, long ivfFlatIndexLength) {
+      return new FieldEntry(
+          vectorEncoding,
+          similarityFunction,
+          dims,
+          count,
+          cagraIndexOffset,
+          cagraIndexLength,
+          bruteForceIndexOffset,
+          bruteForceIndexLength,
+          hnswIndexOffset,
+          hnswIndexLength,
+          binaryIndexOffset,
+          binaryIndexLength,
+          compressed,
+          ivfFlatIndexOffset,
+          ivfFlatIndexLength);
+    }
+
+    /**
+     * Writes this entry, after its vector encoding and similarity function, in the layout of the
+     * current version read by {@link #readEntry}.
+     */
+    void writeEntry(DataOutput output) throws IOException {
+      output.writeInt(dims);
+      output.writeInt(count);
+      output.writeVLong(cagraIndexOffset);
+      output.writeVLong(cagraIndexLength);
+      output.writeVLong(bruteForceIndexOffset);
+      output.writeVLong(bruteForceIndexLength);
+      output.writeVLong(hnswIndexOffset);
+      output.writeVLong(hnswIndexLength);
+      output.writeVLong(binaryIndexOffset);
+      output.writeVLong(binaryIndexLength);
+      output.writeByte((byte) (compressed ? 1 : 0));
+      output.writeVLong(ivfFlatIndexOffset);
+      output.writeVLong(ivfFlatIndexLength);
+    }
 
     static FieldEntry readEntry(
         IndexInput input,
         VectorEncoding vectorEncoding,
-        VectorSimilarityFunction similarityFunction)
+        VectorSimilarityFunction similarityFunction,
+        int version)
         throws IOException {
       var dims = input.readInt();
       var count = input.readInt();
@@ -447,6 +1253,20 @@ public class CuVSVectorsReader extends KnnVectorsReader {
       var bruteForceIndexLength = input.readVLong();
       var hnswIndexOffset = input.readVLong();
       var hnswIndexLength = input.readVLong();
+      long binaryIndexOffset = 0L, binaryIndexLength = 0L;
+      if (version >= VERSION_BINARY_QUANTIZED) {
+        binaryIndexOffset = input.readVLong();
+        binaryIndexLength = input.readVLong();
+      }
+      boolean compressed = false;
+      if (version >= VERSION_IVF_PQ) {
+        compressed = input.readByte() != 0;
+      }
+      long ivfFlatIndexOffset = 0L, ivfFlatIndexLength = 0L;
+      if (version >= VERSION_IVF_FLAT) {
+        ivfFlatIndexOffset = input.readVLong();
+        ivfFlatIndexLength = input.readVLong();
+      }
       return new FieldEntry(
           vectorEncoding,
           similarityFunction,
@@ -457,7 +1277,12 @@ public class CuVSVectorsReader extends KnnVectorsReader {
           bruteForceIndexOffset,
           bruteForceIndexLength,
           hnswIndexOffset,
-          hnswIndexLength);
+          hnswIndexLength,
+          binaryIndexOffset,
+          binaryIndexLength,
+          compressed,
+          ivfFlatIndexOffset,
+          ivfFlatIndexLength);
     }
   }
 
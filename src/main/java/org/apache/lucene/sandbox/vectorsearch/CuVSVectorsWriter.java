@@ -16,7 +16,6 @@
 package org.apache.lucene.sandbox.vectorsearch;
 
 import static org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsReader.SIMILARITY_FUNCTIONS;
-import static org.apache.lucene.index.VectorEncoding.FLOAT32;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_CODEC_NAME;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_EXT;
 import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_EXT;
@@ -28,9 +27,13 @@ import static org.apache.lucene.util.RamUsageEstimator.shallowSizeOfInstance;
 
 import com.nvidia.cuvs.BruteForceIndex;
 import com.nvidia.cuvs.BruteForceIndexParams;
+import com.nvidia.cuvs.CagraCompressionParams;
 import com.nvidia.cuvs.CagraIndex;
 import com.nvidia.cuvs.CagraIndexParams;
 import com.nvidia.cuvs.CagraIndexParams.CagraGraphBuildAlgo;
+import com.nvidia.cuvs.CuVSIvfPqIndexParams;
+import com.nvidia.cuvs.CuVSIvfPqParams;
+import com.nvidia.cuvs.CuVSIvfPqSearchParams;
 import com.nvidia.cuvs.CuVSResources;
 import com.nvidia.cuvs.Dataset;
 import java.io.IOException;
@@ -39,14 +42,18 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.codecs.KnnFieldVectorsWriter;
 import org.apache.lucene.codecs.KnnVectorsWriter;
-import org.apache.lucene.codecs.hnsw.FlatFieldVectorsWriter;
 import org.apache.lucene.codecs.hnsw.FlatVectorsWriter;
+import org.apache.lucene.index.ByteVectorValues;
 import org.apache.lucene.index.DocsWithFieldSet;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FloatVectorValues;
@@ -57,7 +64,13 @@ import org.apache.lucene.index.SegmentWriteState;
 import org.apache.lucene.index.Sorter;
 import org.apache.lucene.index.Sorter.DocMap;
 import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsReader.FieldEntry;
+import org.apache.lucene.search.TaskExecutor;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.store.ByteBuffersIndexOutput;
+import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOSupplier;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 
@@ -81,10 +94,17 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
   private final int graphDegree;
 
   private final CuVSResources resources;
+  private final CuVSResourcesPool resourcesPool; // null to build with the resources
   private final IndexType indexType;
+  private final IvfPqParams ivfPqParams;
+  private final boolean compressDataset;
 
   private final FlatVectorsWriter flatVectorsWriter; // for writing the raw vectors
-  private final List<CuVSFieldWriter> fields = new ArrayList<>();
+  private final List<CuVSFieldWriter<?>> fields = new ArrayList<>();
+  private final TaskExecutor indexBuildExecutor; // null to build the fields one at a time
+  private final List<PendingField> pendingFields = new ArrayList<>();
+  private final CuVSBuildScheduler buildScheduler;
+  private final CuVSBuildScheduler.Priority buildPriority; // merges are built after flushes
   private final IndexOutput meta, cuvsIndex;
   private final InfoStream infoStream;
   private boolean finished;
@@ -92,19 +112,46 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
   /** The CuVS index Type. */
   public enum IndexType {
     /** Builds a Cagra index. */
-    CAGRA(true, false, false),
+    CAGRA(true, false, false, false, false, false),
     /** Builds a Brute Force index. */
-    BRUTE_FORCE(false, true, false),
+    BRUTE_FORCE(false, true, false, false, false, false),
     /** Builds an HSNW index - suitable for searching on CPU. */
-    HNSW(false, false, true),
+    HNSW(false, false, true, false, false, false),
     /** Builds a Cagra and a Brute Force index. */
-    CAGRA_AND_BRUTE_FORCE(true, true, false);
-    private final boolean cagra, bruteForce, hnsw;
+    CAGRA_AND_BRUTE_FORCE(true, true, false, false, false, false),
+    /**
+     * Builds an index of 1-bit quantized vectors, searched by hamming distance, with the
+     * candidates rescored exactly against the raw vectors. Does not require a GPU.
+     */
+    BINARY_QUANTIZED(false, false, false, true, false, false),
+    /**
+     * Builds a Cagra index with IVF-PQ, over a PQ compressed dataset, for segments whose float
+     * vectors do not fit in device memory. See {@link IvfPqParams}.
+     */
+    IVF_PQ(true, false, false, false, true, false),
+    /**
+     * Builds an IVF-Flat index, partitioning the vectors with k-means, and searched by scoring
+     * exactly the vectors of the lists of the closest centroids. Cheaper to build than a Cagra
+     * index, and faster to search than a Brute Force index, it is searched on the CPU and does
+     * not require a GPU. The number of lists probed is set with {@link
+     * CuVSSearchStrategy#nProbes()}.
+     */
+    IVF_FLAT(false, false, false, false, false, true);
+    private final boolean cagra, bruteForce, hnsw, binaryQuantized, ivfPq, ivfFlat;
 
-    IndexType(boolean cagra, boolean bruteForce, boolean hnsw) {
+    IndexType(
+        boolean cagra,
+        boolean bruteForce,
+        boolean hnsw,
+        boolean binaryQuantized,
+        boolean ivfPq,
+        boolean ivfFlat) {
       this.cagra = cagra;
       this.bruteForce = bruteForce;
       this.hnsw = hnsw;
+      this.binaryQuantized = binaryQuantized;
+      this.ivfPq = ivfPq;
+      this.ivfFlat = ivfFlat;
     }
 
     public boolean cagra() {
@@ -118,23 +165,116 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
     public boolean hnsw() {
       return hnsw;
     }
+
+    public boolean binaryQuantized() {
+      return binaryQuantized;
+    }
+
+    public boolean ivfPq() {
+      return ivfPq;
+    }
+
+    public boolean ivfFlat() {
+      return ivfFlat;
+    }
+  }
+
+  /**
+   * The parameters of {@link IndexType#IVF_PQ} indices. The graph is built from an IVF-PQ index
+   * of {@code nLists} lists, searched with {@code nProbes} probes, whose vectors are compressed
+   * with product quantization, in {@code pqDim} sub-vectors of {@code pqBits} bits each. The
+   * dataset of the Cagra index is compressed in {@code pqDim} sub-vectors too, but of 8 bits each,
+   * as CAGRA only searches compressed datasets of 8-bit codes, of sub-vectors of 2 or 4 dimensions.
+   * The dataset of fields whose vectors cannot be split in such sub-vectors, e.g. of an odd number
+   * of dimensions, is not compressed, and their graph is built with the given {@code pqDim}.
+   *
+   * @param nLists the number of IVF lists, at most the number of vectors of the segment
+   * @param nProbes the number of lists probed, when searching the IVF-PQ index for the graph
+   * @param pqDim the dimensions of the PQ compressed vectors, a half or a quarter of the dimensions
+   *     of the vectors, or 0 for a quarter, or a half if the dimensions are not a multiple of 4
+   * @param pqBits the bits per PQ code of the IVF-PQ index, in [4, 8]
+   */
+  public record IvfPqParams(int nLists, int nProbes, int pqDim, int pqBits) {
+
+    /** The default parameters. */
+    public static final IvfPqParams DEFAULT = new IvfPqParams(1024, 20, 0, 8);
+
+    // The minimum number of vectors per IVF list, for the lists to be trained
+    static final int MIN_VECTORS_PER_LIST = 32;
+
+    public IvfPqParams {
+      if (nLists < 1) {
+        throw new IllegalArgumentException("nLists must be at least 1, got: " + nLists);
+      }
+      if (nProbes < 1 || nProbes > nLists) {
+        throw new IllegalArgumentException(
+            "nProbes must be in [1, nLists], got: " + nProbes + ", nLists=" + nLists);
+      }
+      if (pqDim < 0) {
+        throw new IllegalArgumentException("negative pqDim: " + pqDim);
+      }
+      if (pqBits < 4 || pqBits > 8) {
+        throw new IllegalArgumentException("pqBits must be in [4, 8], got: " + pqBits);
+      }
+    }
+
+    /** Returns the number of lists of an index of the given size. */
+    int nLists(int size) {
+      return Math.max(1, Math.min(nLists, size / MIN_VECTORS_PER_LIST));
+    }
   }
 
+  // The bits of the codes of compressed datasets, the only ones CAGRA searches
+  static final int COMPRESSED_PQ_BITS = 8;
+
+  /**
+   * Returns the number of 8-bit codes of the compressed vectors of the given dimensions: the given
+   * pqDim, if not 0, or a quarter of the dimensions, or a half if not a multiple of 4. CAGRA only
+   * searches compressed datasets of sub-vectors of 2 or 4 dimensions, so this returns 0 if the
+   * vectors cannot be split in such sub-vectors, and their dataset is not compressed.
+   */
+  static int compressedPqDim(int dims, int pqDim) {
+    if (pqDim == 0) {
+      if (dims % 4 == 0) {
+        return dims / 4;
+      }
+      if (dims % 2 == 0) {
+        return dims / 2;
+      }
+    } else if (dims == 2 * pqDim || dims == 4 * pqDim) {
+      return pqDim;
+    }
+    return 0;
+  }
+
+  // Whether the dataset of the Cagra index of vectors of the given dimensions is compressed
+  private boolean compressesDataset(int dims) {
+    if (indexType.ivfPq()) {
+      return compressedPqDim(dims, ivfPqParams.pqDim()) > 0;
+    }
+    return indexType.cagra() && compressDataset && compressedPqDim(dims, 0) > 0;
+  }
+
+  /** Creates a writer of the settings of the given format, such as the index type. */
   public CuVSVectorsWriter(
       SegmentWriteState state,
-      int cuvsWriterThreads,
-      int intGraphDegree,
-      int graphDegree,
-      IndexType indexType,
+      CuVSVectorsFormat format,
       CuVSResources resources,
       FlatVectorsWriter flatVectorsWriter)
       throws IOException {
     super();
-    this.indexType = indexType;
-    this.cuvsWriterThreads = cuvsWriterThreads;
-    this.intGraphDegree = intGraphDegree;
-    this.graphDegree = graphDegree;
+    this.indexType = format.indexType;
+    this.ivfPqParams = format.ivfPqParams;
+    this.compressDataset = format.compressDataset;
+    this.cuvsWriterThreads = format.cuvsWriterThreads;
+    this.intGraphDegree = format.intGraphDegree;
+    this.graphDegree = format.graphDegree;
     this.resources = resources;
+    this.resourcesPool = resources == null ? null : CuVSVectorsFormat.resourcesPool();
+    this.indexBuildExecutor =
+        format.indexBuildExecutor == null ? null : new TaskExecutor(format.indexBuildExecutor);
+    this.buildScheduler = CuVSVectorsFormat.buildScheduler();
+    this.buildPriority = buildPriority(state);
     this.flatVectorsWriter = flatVectorsWriter;
     this.infoStream = state.infoStream;
 
@@ -170,14 +310,8 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
 
   @Override
   public KnnFieldVectorsWriter<?> addField(FieldInfo fieldInfo) throws IOException {
-    var encoding = fieldInfo.getVectorEncoding();
-    if (encoding != FLOAT32) {
-      throw new IllegalArgumentException("expected float32, got:" + encoding);
-    }
     var writer = Objects.requireNonNull(flatVectorsWriter.addField(fieldInfo));
-    @SuppressWarnings("unchecked")
-    var flatWriter = (FlatFieldVectorsWriter<float[]>) writer;
-    var cuvsFieldWriter = new CuVSFieldWriter(fieldInfo, flatWriter);
+    var cuvsFieldWriter = new CuVSFieldWriter<>(fieldInfo, writer);
     fields.add(cuvsFieldWriter);
     return writer;
   }
@@ -192,7 +326,7 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
     return sb.toString();
   }
 
-  private CagraIndexParams cagraIndexParams(int size) {
+  private CagraIndexParams cagraIndexParams(int size, int dims, boolean compress) {
     if (size < 2) {
       // https://github.com/rapidsai/cuvs/issues/666
       throw new IllegalArgumentException("cagra index must be greater than 2");
@@ -201,12 +335,49 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
     // var minGraphDegree = Math.min(graphDegree, minIntGraphDegree);
     // log.info(indexMsg(size, intGraphDegree, minIntGraphDegree, graphDegree, minGraphDegree));
 
-    return new CagraIndexParams.Builder()
-        .withNumWriterThreads(cuvsWriterThreads)
-        .withIntermediateGraphDegree(intGraphDegree)
-        .withGraphDegree(graphDegree)
-        .withCagraGraphBuildAlgo(CagraGraphBuildAlgo.NN_DESCENT)
-        .build();
+    var builder =
+        new CagraIndexParams.Builder()
+            .withNumWriterThreads(cuvsWriterThreads)
+            .withIntermediateGraphDegree(intGraphDegree)
+            .withGraphDegree(graphDegree);
+    if (indexType.ivfPq() == false) {
+      builder.withCagraGraphBuildAlgo(CagraGraphBuildAlgo.NN_DESCENT);
+      if (compress) {
+        builder.withCompressionParams(
+            new CagraCompressionParams.Builder()
+                .withPqDim(compressedPqDim(dims, 0))
+                .withPqBits(COMPRESSED_PQ_BITS)
+                .build());
+      }
+      return builder.build();
+    }
+    int nLists = ivfPqParams.nLists(size);
+    int pqDim = compress ? compressedPqDim(dims, ivfPqParams.pqDim()) : ivfPqParams.pqDim();
+    var ivfPqIndexParams =
+        new CuVSIvfPqIndexParams.Builder()
+            .withNLists(nLists)
+            .withPqDim(pqDim)
+            .withPqBits(ivfPqParams.pqBits())
+            .build();
+    var ivfPqSearchParams =
+        new CuVSIvfPqSearchParams.Builder()
+            .withNProbes(Math.min(ivfPqParams.nProbes(), nLists))
+            .build();
+    builder
+        .withCagraGraphBuildAlgo(CagraGraphBuildAlgo.IVF_PQ)
+        .withCuVSIvfPqParams(
+            new CuVSIvfPqParams.Builder()
+                .withCuVSIvfPqIndexParams(ivfPqIndexParams)
+                .withCuVSIvfPqSearchParams(ivfPqSearchParams)
+                .build());
+    if (compress) {
+      builder.withCompressionParams(
+          new CagraCompressionParams.Builder()
+              .withPqDim(pqDim)
+              .withPqBits(COMPRESSED_PQ_BITS)
+              .build());
+    }
+    return builder.build();
   }
 
   static long nanosToMillis(long nanos) {
@@ -219,22 +390,41 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
     }
   }
 
-  private void writeCagraIndex(OutputStream os, Dataset dataset) throws Throwable {
+  private void writeCagraIndex(OutputStream os, Dataset dataset, CuVSResources resources)
+      throws Throwable {
     if (dataset.size() < 2) {
       throw new IllegalArgumentException(dataset.size() + " vectors, less than min [2] required");
     }
-    CagraIndexParams params = cagraIndexParams(dataset.size());
+    boolean compress = compressesDataset(dataset.dimensions());
+    if ((indexType.ivfPq() || compressDataset) && compress == false) {
+      info(
+          "dataset of vectors of "
+              + dataset.dimensions()
+              + " dimensions not compressed, as they cannot be split in sub-vectors of 2 or 4"
+              + " dimensions");
+    }
+    CagraIndexParams params = cagraIndexParams(dataset.size(), dataset.dimensions(), compress);
     long startTime = System.nanoTime();
     var index =
         CagraIndex.newBuilder(resources).withDataset(dataset).withIndexParams(params).build();
     long elapsedMillis = nanosToMillis(System.nanoTime() - startTime);
     info("Cagra index created in " + elapsedMillis + "ms, with " + dataset.size() + " vectors");
-    Path tmpFile = Files.createTempFile(resources.tempDirectory(), "tmpindex", "cag");
-    index.serialize(os, tmpFile);
-    index.destroyIndex();
+    serializeCagraIndex(os, index, resources);
+  }
+
+  /** Serializes and destroys the given Cagra index, which is destroyed even if that fails. */
+  private static void serializeCagraIndex(
+      OutputStream os, CagraIndex index, CuVSResources resources) throws Throwable {
+    try {
+      Path tmpFile = Files.createTempFile(resources.tempDirectory(), "tmpindex", "cag");
+      index.serialize(os, tmpFile);
+    } finally {
+      index.destroyIndex();
+    }
   }
 
-  private void writeBruteForceIndex(OutputStream os, Dataset dataset) throws Throwable {
+  private void writeBruteForceIndex(OutputStream os, Dataset dataset, CuVSResources resources)
+      throws Throwable {
     BruteForceIndexParams params =
         new BruteForceIndexParams.Builder()
             .withNumWriterThreads(32) // TODO: Make this configurable later.
@@ -244,67 +434,278 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
         BruteForceIndex.newBuilder(resources).withIndexParams(params).withDataset(dataset).build();
     long elapsedMillis = nanosToMillis(System.nanoTime() - startTime);
     info("bf index created in " + elapsedMillis + "ms, with " + dataset.size() + " vectors");
-    index.serialize(os);
-    index.destroyIndex();
+    try {
+      index.serialize(os);
+    } finally {
+      index.destroyIndex();
+    }
   }
 
-  private void writeHNSWIndex(OutputStream os, Dataset dataset) throws Throwable {
+  private void writeHNSWIndex(OutputStream os, Dataset dataset, CuVSResources resources)
+      throws Throwable {
     if (dataset.size() < 2) {
       throw new IllegalArgumentException(dataset.size() + " vectors, less than min [2] required");
     }
-    CagraIndexParams indexParams = cagraIndexParams(dataset.size());
+    // the hnsw index is serialized with the float vectors
+    CagraIndexParams indexParams = cagraIndexParams(dataset.size(), dataset.dimensions(), false);
     long startTime = System.nanoTime();
     var index =
         CagraIndex.newBuilder(resources).withDataset(dataset).withIndexParams(indexParams).build();
     long elapsedMillis = nanosToMillis(System.nanoTime() - startTime);
     info("HNSW index created in " + elapsedMillis + "ms, with " + dataset.size() + " vectors");
-    Path tmpFile = Files.createTempFile("tmpindex", "hnsw");
-    index.serializeToHNSW(os, tmpFile);
-    index.destroyIndex();
+    try {
+      Path tmpFile = Files.createTempFile("tmpindex", "hnsw");
+      index.serializeToHNSW(os, tmpFile);
+    } finally {
+      index.destroyIndex();
+    }
   }
 
   @Override
   public void flush(int maxDoc, DocMap sortMap) throws IOException {
     flatVectorsWriter.flush(maxDoc, sortMap);
     for (var field : fields) {
-      if (sortMap == null) {
-        writeField(field);
+      if (indexType.binaryQuantized() || indexType.ivfFlat()) {
+        List<?> vectors = sortMap == null ? field.getVectors() : sortedVectors(field, sortMap);
+        if (indexType.binaryQuantized()) {
+          writeBinaryQuantizedField(field.fieldInfo(), vectors);
+        } else {
+          writeIvfFlatField(field.fieldInfo(), () -> vectorValues(field.fieldInfo(), vectors));
+        }
+      } else if (resources == null) {
+        writeFlatOnly(field.fieldInfo(), field.getVectors().size());
+      } else if (sortMap == null) {
+        writeFieldInternal(field.fieldInfo(), createDataset(field));
       } else {
-        writeSortingField(field, sortMap);
+        writeFieldInternal(field.fieldInfo(), createSortedDataset(field, sortMap));
       }
     }
+    writePendingFields();
   }
 
-  private void writeField(CuVSFieldWriter fieldData) throws IOException {
+  /** Returns the dataset of the buffered vectors of the given field. */
+  static Dataset createDataset(CuVSFieldWriter<?> fieldData) {
     // TODO: Argh! https://github.com/rapidsai/cuvs/issues/698
-    List<float[]> vectors = fieldData.getVectors();
-    Dataset dataset = Dataset.create(vectors.size(), fieldData.fieldInfo().getVectorDimension());
-    for (float[] vec : vectors) dataset.addVector(vec);
-    writeFieldInternal(fieldData.fieldInfo(), dataset);
+    return createDataset(fieldData, null);
   }
 
-  private void writeSortingField(CuVSFieldWriter fieldData, Sorter.DocMap sortMap)
+  /** Returns the dataset of the buffered vectors of the given field, in sorted order. */
+  static Dataset createSortedDataset(CuVSFieldWriter<?> fieldData, Sorter.DocMap sortMap)
+      throws IOException {
+    return createDataset(fieldData, newToOldOrds(fieldData, sortMap));
+  }
+
+  // Copies the buffered vectors straight into the dataset, in the order of the given ordinals, or
+  // of the buffer if null. Datasets copy the added vectors, so byte vectors are all widened into
+  // the same scratch vector.
+  private static Dataset createDataset(CuVSFieldWriter<?> fieldData, int[] ords) {
+    List<?> vectors = fieldData.getVectors();
+    int dims = fieldData.fieldInfo().getVectorDimension();
+    Dataset dataset = Dataset.create(vectors.size(), dims);
+    float[] scratch = new float[dims];
+    for (int i = 0; i < vectors.size(); i++) {
+      Object vector = vectors.get(ords == null ? i : ords[i]);
+      dataset.addVector(toFloatVector(vector, scratch));
+    }
+    return dataset;
+  }
+
+  /** Returns the buffered vectors of the given field, in sorted order. */
+  static List<?> sortedVectors(CuVSFieldWriter<?> fieldData, Sorter.DocMap sortMap)
+      throws IOException {
+    List<?> oldVectors = fieldData.getVectors();
+    int[] new2OldOrd = newToOldOrds(fieldData, sortMap);
+    List<Object> vectors = new ArrayList<>(new2OldOrd.length);
+    for (int oldOrd : new2OldOrd) {
+      vectors.add(oldVectors.get(oldOrd));
+    }
+    return vectors;
+  }
+
+  // Returns the old ordinal of each new ordinal, of the buffered vectors of the given field
+  private static int[] newToOldOrds(CuVSFieldWriter<?> fieldData, Sorter.DocMap sortMap)
       throws IOException {
     DocsWithFieldSet oldDocsWithFieldSet = fieldData.getDocsWithFieldSet();
     final int[] new2OldOrd = new int[oldDocsWithFieldSet.cardinality()]; // new ord to old ord
-
     mapOldOrdToNewOrd(oldDocsWithFieldSet, sortMap, null, new2OldOrd, null);
+    return new2OldOrd;
+  }
 
-    float[][] oldVectors = fieldData.getVectors().toArray(float[][]::new);
-    Dataset dataset =
-        Dataset.create(fieldData.getVectors().size(), fieldData.fieldInfo().getVectorDimension());
-    for (int i = 0; i < oldVectors.length; i++) {
-      float[] vec = oldVectors[new2OldOrd[i]];
-      dataset.addVector(vec);
-    }
-    writeFieldInternal(fieldData.fieldInfo(), dataset);
+  /**
+   * Returns the given float or byte vector as floats. cuVS datasets hold floats, so byte vectors
+   * are widened when copied to the GPU, while their raw vectors are stored as bytes.
+   */
+  static float[] toFloatVector(Object vector) {
+    return toFloatVector(vector, null);
+  }
+
+  // Returns the given vector as floats, widening byte vectors into the given scratch vector, or a
+  // new vector if null
+  private static float[] toFloatVector(Object vector, float[] scratch) {
+    return switch (vector) {
+      case float[] floats -> floats;
+      case byte[] bytes -> {
+        float[] floats = scratch == null ? new float[bytes.length] : scratch;
+        for (int i = 0; i < bytes.length; i++) {
+          floats[i] = bytes[i];
+        }
+        yield floats;
+      }
+      default -> throw new IllegalArgumentException("unexpected vector: " + vector);
+    };
   }
 
+  /**
+   * Writes the indices of the given field. With an index build executor, the field is only added
+   * to the pending fields, whose indices are built concurrently when the segment is flushed, or
+   * all the fields are merged.
+   */
   private void writeFieldInternal(FieldInfo fieldInfo, Dataset dataset) throws IOException {
-    if (dataset.size() == 0) {
-      writeEmpty(fieldInfo);
+    if (indexBuildExecutor != null) {
+      pendingFields.add(new PendingField(fieldInfo, dataset));
       return;
     }
+    long offset = cuvsIndex.getFilePointer();
+    FieldIndices indices = writeIndices(cuvsIndex, dataset, resources);
+    writeFieldMeta(fieldInfo, offset, indices);
+  }
+
+  // Leases the free slot of the pool of the fewest placed indices for the build of a field, or
+  // returns null without a pool
+  private CuVSResourcesPool.Lease acquireResources() {
+    return resourcesPool == null ? null : resourcesPool.acquire();
+  }
+
+  /**
+   * Builds the indices of the pending fields concurrently, each into its own buffer, rather than
+   * with the shared resources of the writer: a field is built with the resources of a slot of the
+   * pool, leased once the build is admitted, or without a pool, with the resources of the thread
+   * that builds it, created once per thread. The buffers are then appended in field order, so that
+   * the layout of the files does not depend on the order of the builds.
+   */
+  private void writePendingFields() throws IOException {
+    if (pendingFields.isEmpty()) {
+      return;
+    }
+    long startTime = System.nanoTime();
+    Map<Thread, CuVSResources> threadResources = new ConcurrentHashMap<>();
+    List<Callable<StagedField>> tasks = new ArrayList<>(pendingFields.size());
+    for (PendingField field : pendingFields) {
+      tasks.add(
+          () -> {
+            String name = field.fieldInfo().name;
+            ByteBuffersDataOutput buffer = new ByteBuffersDataOutput();
+            try (var out = new ByteBuffersIndexOutput(buffer, "cuvs index", name)) {
+              var fieldResources = resourcesPool == null ? threadResources(threadResources) : null;
+              var indices = writeIndices(out, field.dataset(), fieldResources);
+              return new StagedField(buffer, indices);
+            } catch (Throwable t) {
+              handleThrowable(t);
+              return null;
+            }
+          });
+    }
+    List<StagedField> stagedFields;
+    try {
+      stagedFields = indexBuildExecutor.invokeAll(tasks);
+    } finally {
+      // all the tasks are done, even if some failed
+      closeAll(threadResources.values());
+    }
+    for (int i = 0; i < stagedFields.size(); i++) {
+      StagedField staged = stagedFields.get(i);
+      long offset = cuvsIndex.getFilePointer();
+      staged.buffer().copyTo(cuvsIndex);
+      writeFieldMeta(pendingFields.get(i).fieldInfo(), offset, staged.indices());
+    }
+    info(
+        "indices of "
+            + pendingFields.size()
+            + " fields built in "
+            + nanosToMillis(System.nanoTime() - startTime)
+            + "ms");
+    pendingFields.clear();
+  }
+
+  // Returns the resources of the current thread, creating them on the first call of the thread
+  private static CuVSResources threadResources(Map<Thread, CuVSResources> threadResources)
+      throws Throwable {
+    CuVSResources resources = threadResources.get(Thread.currentThread());
+    if (resources == null) {
+      resources = CuVSResources.create();
+      threadResources.put(Thread.currentThread(), resources);
+    }
+    return resources;
+  }
+
+  private static void closeAll(Collection<CuVSResources> resources) throws IOException {
+    Throwable failure = null;
+    for (CuVSResources r : resources) {
+      try {
+        r.close();
+      } catch (Throwable t) {
+        if (failure == null) {
+          failure = t;
+        } else {
+          failure.addSuppressed(t);
+        }
+      }
+    }
+    if (failure != null) {
+      handleThrowable(failure);
+    }
+  }
+
+  /** A field whose indices are built when the segment is flushed, or all the fields are merged. */
+  private record PendingField(FieldInfo fieldInfo, Dataset dataset) {}
+
+  /** The indices of a field, built into the given buffer. */
+  private record StagedField(ByteBuffersDataOutput buffer, FieldIndices indices) {}
+
+  /**
+   * The indices of a field, written one after the other: the Cagra index, the Brute Force index,
+   * and the HNSW index. A length is 0 if the index is not written.
+   */
+  private record FieldIndices(
+      int count,
+      long cagraIndexLength,
+      long bruteForceIndexLength,
+      long hnswIndexLength,
+      boolean compressed) {}
+
+  /** Returns the priority of the builds of the segment of the given state. */
+  static CuVSBuildScheduler.Priority buildPriority(SegmentWriteState state) {
+    return state.context.context() == IOContext.Context.MERGE
+        ? CuVSBuildScheduler.Priority.MERGE
+        : CuVSBuildScheduler.Priority.FLUSH;
+  }
+
+  /**
+   * Builds the indices of the given dataset into the given output, once admitted by the build
+   * scheduler, with the resources of a slot of the pool, leased once admitted so that a queued
+   * build holds no slot, or without a pool, with the given resources.
+   */
+  private FieldIndices writeIndices(IndexOutput out, Dataset dataset, CuVSResources resources)
+      throws IOException {
+    if (dataset.size() == 0) {
+      return new FieldIndices(0, 0L, 0L, 0L, false);
+    }
+    long estimatedBytes =
+        CuVSBuildScheduler.estimateBuildBytes(
+            dataset.size(), dataset.dimensions(), intGraphDegree, graphDegree);
+    return buildScheduler.run(
+        buildPriority,
+        estimatedBytes,
+        () -> {
+          try (var lease = acquireResources()) {
+            var buildResources = lease == null ? resources : lease.resources();
+            return buildIndices(out, dataset, buildResources);
+          }
+        });
+  }
+
+  private FieldIndices buildIndices(IndexOutput out, Dataset dataset, CuVSResources resources)
+      throws IOException {
     long cagraIndexOffset, cagraIndexLength = 0L;
     long bruteForceIndexOffset, bruteForceIndexLength = 0L;
     long hnswIndexOffset, hnswIndexLength = 0L;
@@ -316,37 +717,37 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
             : this.indexType;
 
     try {
-      cagraIndexOffset = cuvsIndex.getFilePointer();
+      cagraIndexOffset = out.getFilePointer();
       if (indexType.cagra()) {
         try {
-          var cagraIndexOutputStream = new IndexOutputOutputStream(cuvsIndex);
-          writeCagraIndex(cagraIndexOutputStream, dataset);
+          var cagraIndexOutputStream = new IndexOutputOutputStream(out);
+          writeCagraIndex(cagraIndexOutputStream, dataset, resources);
         } catch (Throwable t) {
           handleThrowableWithIgnore(t, CANNOT_GENERATE_CAGRA);
           // workaround for cuVS issue
           indexType = IndexType.BRUTE_FORCE;
         }
-        cagraIndexLength = cuvsIndex.getFilePointer() - cagraIndexOffset;
+        cagraIndexLength = out.getFilePointer() - cagraIndexOffset;
       }
 
-      bruteForceIndexOffset = cuvsIndex.getFilePointer();
+      bruteForceIndexOffset = out.getFilePointer();
       if (indexType.bruteForce()) {
-        var bruteForceIndexOutputStream = new IndexOutputOutputStream(cuvsIndex);
-        writeBruteForceIndex(bruteForceIndexOutputStream, dataset);
-        bruteForceIndexLength = cuvsIndex.getFilePointer() - bruteForceIndexOffset;
+        var bruteForceIndexOutputStream = new IndexOutputOutputStream(out);
+        writeBruteForceIndex(bruteForceIndexOutputStream, dataset, resources);
+        bruteForceIndexLength = out.getFilePointer() - bruteForceIndexOffset;
       }
 
-      hnswIndexOffset = cuvsIndex.getFilePointer();
+      hnswIndexOffset = out.getFilePointer();
       if (indexType.hnsw()) {
-        var hnswIndexOutputStream = new IndexOutputOutputStream(cuvsIndex);
+        var hnswIndexOutputStream = new IndexOutputOutputStream(out);
         if (dataset.size() > MIN_CAGRA_INDEX_SIZE) {
           try {
-            writeHNSWIndex(hnswIndexOutputStream, dataset);
+            writeHNSWIndex(hnswIndexOutputStream, dataset, resources);
           } catch (Throwable t) {
             handleThrowableWithIgnore(t, CANNOT_GENERATE_CAGRA);
           }
         }
-        hnswIndexLength = cuvsIndex.getFilePointer() - hnswIndexOffset;
+        hnswIndexLength = out.getFilePointer() - hnswIndexOffset;
       }
 
       // StringBuilder sb = new StringBuilder("writeField ");
@@ -358,45 +759,159 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
       // sb.append(", hnswIndexLength=").append(hnswIndexLength);
       // log.info(sb.toString());
 
-      writeMeta(
-          fieldInfo,
+      return new FieldIndices(
           dataset.size(),
-          cagraIndexOffset,
           cagraIndexLength,
-          bruteForceIndexOffset,
           bruteForceIndexLength,
-          hnswIndexOffset,
-          hnswIndexLength);
+          hnswIndexLength,
+          // the dataset of the cagra index is PQ compressed
+          compressesDataset(dataset.dimensions()) && cagraIndexLength > 0);
     } catch (Throwable t) {
       handleThrowable(t);
+      return null;
     }
   }
 
+  /** Writes the meta of the given indices, written at the given offset of the index file. */
+  private void writeFieldMeta(FieldInfo fieldInfo, long offset, FieldIndices indices)
+      throws IOException {
+    if (indices.count() == 0) {
+      writeEmpty(fieldInfo);
+      return;
+    }
+    long bruteForceIndexOffset = offset + indices.cagraIndexLength();
+    long hnswIndexOffset = bruteForceIndexOffset + indices.bruteForceIndexLength();
+    writeMeta(
+        fieldInfo.number,
+        FieldEntry.of(fieldInfo, indices.count())
+            .withGpuIndices(
+                offset,
+                indices.cagraIndexLength(),
+                bruteForceIndexOffset,
+                indices.bruteForceIndexLength(),
+                hnswIndexOffset,
+                indices.hnswIndexLength(),
+                indices.compressed()));
+  }
+
   private void writeEmpty(FieldInfo fieldInfo) throws IOException {
-    writeMeta(fieldInfo, 0, 0L, 0L, 0L, 0L, 0L, 0L);
+    writeMeta(fieldInfo.number, FieldEntry.of(fieldInfo, 0));
   }
 
-  private void writeMeta(
-      FieldInfo field,
-      int count,
-      long cagraIndexOffset,
-      long cagraIndexLength,
-      long bruteForceIndexOffset,
-      long bruteForceIndexLength,
-      long hnswIndexOffset,
-      long hnswIndexLength)
+  // Without a GPU, only the raw vectors are written, and searched exactly
+  private void writeFlatOnly(FieldInfo fieldInfo, int count) throws IOException {
+    info("no GPU, no index written for field=" + fieldInfo.name + ", with " + count + " vectors");
+    writeMeta(fieldInfo.number, FieldEntry.of(fieldInfo, count));
+  }
+
+  private void writeBinaryQuantizedField(FieldInfo fieldInfo, List<?> vectors) throws IOException {
+    if (vectors.isEmpty()) {
+      writeEmpty(fieldInfo);
+      return;
+    }
+    int dims = fieldInfo.getVectorDimension();
+    float[] scratch = new float[dims];
+    double[] sum = new double[dims];
+    for (Object vector : vectors) {
+      BinaryQuantizedIndex.addToSum(sum, toFloatVector(vector, scratch));
+    }
+    float[] centroid = BinaryQuantizedIndex.centroid(sum, vectors.size());
+
+    long binaryIndexOffset = cuvsIndex.getFilePointer();
+    BinaryQuantizedIndex.writeCentroid(cuvsIndex, centroid);
+    long[] code = new long[BinaryQuantizedIndex.numWords(dims)];
+    for (Object vector : vectors) {
+      BinaryQuantizedIndex.writeCode(cuvsIndex, toFloatVector(vector, scratch), centroid, code);
+    }
+    long binaryIndexLength = cuvsIndex.getFilePointer() - binaryIndexOffset;
+    writeMeta(
+        fieldInfo.number,
+        FieldEntry.of(fieldInfo, vectors.size())
+            .withBinaryIndex(binaryIndexOffset, binaryIndexLength));
+  }
+
+  /**
+   * Writes the binary quantized index of the merged vectors of the given field. The merged vectors
+   * are iterated twice, once for their centroid and once for their codes, as merged vector values
+   * can only be iterated once.
+   */
+  private void writeBinaryQuantizedField(FieldInfo fieldInfo, MergeState mergeState)
+      throws IOException {
+    int dims = fieldInfo.getVectorDimension();
+    float[] scratch = new float[dims];
+    double[] sum = new double[dims];
+    int numVectors = 0;
+    KnnVectorValues vectorValues = mergedVectorValues(fieldInfo, mergeState);
+    KnnVectorValues.DocIndexIterator iter = vectorValues.iterator();
+    for (int docV = iter.nextDoc(); docV != NO_MORE_DOCS; docV = iter.nextDoc()) {
+      BinaryQuantizedIndex.addToSum(sum, vectorValue(vectorValues, iter.index(), scratch));
+      numVectors++;
+    }
+    if (numVectors == 0) {
+      writeEmpty(fieldInfo);
+      return;
+    }
+    float[] centroid = BinaryQuantizedIndex.centroid(sum, numVectors);
+
+    long binaryIndexOffset = cuvsIndex.getFilePointer();
+    BinaryQuantizedIndex.writeCentroid(cuvsIndex, centroid);
+    long[] code = new long[BinaryQuantizedIndex.numWords(dims)];
+    int count = 0;
+    vectorValues = mergedVectorValues(fieldInfo, mergeState);
+    iter = vectorValues.iterator();
+    for (int docV = iter.nextDoc(); docV != NO_MORE_DOCS; docV = iter.nextDoc()) {
+      float[] vector = vectorValue(vectorValues, iter.index(), scratch);
+      BinaryQuantizedIndex.writeCode(cuvsIndex, vector, centroid, code);
+      count++;
+    }
+    long binaryIndexLength = cuvsIndex.getFilePointer() - binaryIndexOffset;
+    writeMeta(
+        fieldInfo.number,
+        FieldEntry.of(fieldInfo, count).withBinaryIndex(binaryIndexOffset, binaryIndexLength));
+  }
+
+  /**
+   * Writes the IVF-Flat index of the vector values returned by the given supplier, which must
+   * return new vector values on each call, as the vectors are iterated more than once.
+   */
+  private void writeIvfFlatField(FieldInfo fieldInfo, IOSupplier<KnnVectorValues> vectors)
       throws IOException {
-    meta.writeInt(field.number);
-    meta.writeInt(field.getVectorEncoding().ordinal());
-    meta.writeInt(distFuncToOrd(field.getVectorSimilarityFunction()));
-    meta.writeInt(field.getVectorDimension());
-    meta.writeInt(count);
-    meta.writeVLong(cagraIndexOffset);
-    meta.writeVLong(cagraIndexLength);
-    meta.writeVLong(bruteForceIndexOffset);
-    meta.writeVLong(bruteForceIndexLength);
-    meta.writeVLong(hnswIndexOffset);
-    meta.writeVLong(hnswIndexLength);
+    int count = vectors.get().size();
+    if (count == 0) {
+      writeEmpty(fieldInfo);
+      return;
+    }
+    long startTime = System.nanoTime();
+    long ivfFlatIndexOffset = cuvsIndex.getFilePointer();
+    IvfFlatIndex.write(cuvsIndex, vectors);
+    long ivfFlatIndexLength = cuvsIndex.getFilePointer() - ivfFlatIndexOffset;
+    info(
+        "ivf-flat index created in "
+            + nanosToMillis(System.nanoTime() - startTime)
+            + "ms, with "
+            + count
+            + " vectors");
+    writeMeta(
+        fieldInfo.number,
+        FieldEntry.of(fieldInfo, count).withIvfFlatIndex(ivfFlatIndexOffset, ivfFlatIndexLength));
+  }
+
+  /** Returns the vector values of the given buffered vectors of a field, by ordinal. */
+  @SuppressWarnings("unchecked")
+  private static KnnVectorValues vectorValues(FieldInfo fieldInfo, List<?> vectors) {
+    int dims = fieldInfo.getVectorDimension();
+    return switch (fieldInfo.getVectorEncoding()) {
+      case BYTE -> ByteVectorValues.fromBytes((List<byte[]>) vectors, dims);
+      case FLOAT32 -> FloatVectorValues.fromFloats((List<float[]>) vectors, dims);
+    };
+  }
+
+  /** Writes the meta of the field of the given number, in the layout read by the reader. */
+  private void writeMeta(int fieldNumber, FieldEntry entry) throws IOException {
+    meta.writeInt(fieldNumber);
+    meta.writeInt(entry.vectorEncoding().ordinal());
+    meta.writeInt(distFuncToOrd(entry.similarityFunction()));
+    entry.writeEntry(meta);
   }
 
   static int distFuncToOrd(VectorSimilarityFunction func) {
@@ -425,31 +940,60 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
   }
 
   /** Copies the vector values into dst. Returns the actual number of vectors copied. */
-  private static int getVectorData(FloatVectorValues floatVectorValues, Dataset dataset)
-      throws IOException {
+  static int getVectorData(KnnVectorValues vectorValues, Dataset dataset) throws IOException {
     DocsWithFieldSet docsWithField = new DocsWithFieldSet();
     int count = 0;
-    KnnVectorValues.DocIndexIterator iter = floatVectorValues.iterator();
+    KnnVectorValues.DocIndexIterator iter = vectorValues.iterator();
+    float[] scratch = new float[vectorValues.dimension()];
     for (int docV = iter.nextDoc(); docV != NO_MORE_DOCS; docV = iter.nextDoc()) {
       assert iter.index() == count;
-      // dst[iter.index()] = floatVectorValues.vectorValue(iter.index());
-      dataset.addVector(floatVectorValues.vectorValue(iter.index())); // is this correct?
+      dataset.addVector(vectorValue(vectorValues, iter.index(), scratch));
       docsWithField.add(docV);
       count++;
     }
     return docsWithField.cardinality();
   }
 
+  /**
+   * Returns the vector of the given ordinal, as floats. Byte vectors are widened into the given
+   * scratch vector, or a new vector if null.
+   */
+  static float[] vectorValue(KnnVectorValues vectorValues, int ord, float[] scratch)
+      throws IOException {
+    return switch (vectorValues) {
+      case FloatVectorValues floatValues -> floatValues.vectorValue(ord);
+      case ByteVectorValues byteValues -> toFloatVector(byteValues.vectorValue(ord), scratch);
+      default -> throw new IllegalArgumentException("unexpected values: " + vectorValues);
+    };
+  }
+
+  /** Returns the merged vector values of the given field, which can only be iterated once. */
+  private static KnnVectorValues mergedVectorValues(FieldInfo fieldInfo, MergeState mergeState)
+      throws IOException {
+    return switch (fieldInfo.getVectorEncoding()) {
+      case BYTE -> KnnVectorsWriter.MergedVectorValues.mergeByteVectorValues(fieldInfo, mergeState);
+      case FLOAT32 ->
+          KnnVectorsWriter.MergedVectorValues.mergeFloatVectorValues(fieldInfo, mergeState);
+    };
+  }
+
   @Override
   public void mergeOneField(FieldInfo fieldInfo, MergeState mergeState) throws IOException {
     flatVectorsWriter.mergeOneField(fieldInfo, mergeState);
     try {
-      final FloatVectorValues mergedVectorValues =
-          switch (fieldInfo.getVectorEncoding()) {
-            case BYTE -> throw new AssertionError("bytes not supported");
-            case FLOAT32 ->
-                KnnVectorsWriter.MergedVectorValues.mergeFloatVectorValues(fieldInfo, mergeState);
-          };
+      if (indexType.binaryQuantized()) {
+        writeBinaryQuantizedField(fieldInfo, mergeState);
+        return;
+      }
+      if (indexType.ivfFlat()) {
+        writeIvfFlatField(fieldInfo, () -> mergedVectorValues(fieldInfo, mergeState));
+        return;
+      }
+      final KnnVectorValues mergedVectorValues = mergedVectorValues(fieldInfo, mergeState);
+      if (resources == null) {
+        writeFlatOnly(fieldInfo, mergedVectorValues.size());
+        return;
+      }
 
       // Also will be replaced with the cuVS merge api
       Dataset dataset = Dataset.create(mergedVectorValues.size(), mergedVectorValues.dimension());
@@ -466,6 +1010,8 @@ public class CuVSVectorsWriter extends KnnVectorsWriter {
       throw new IllegalStateException("already finished");
     }
     finished = true;
+    // the fields of a merge
+    writePendingFields();
     flatVectorsWriter.finish();
 
     if (meta != null) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.Weight;
+
+/**
+ * A query that matches a fixed set of documents, with precomputed scores. This is the rewritten
+ * form of the CuVS knn queries, similar to the one used by Lucene's own knn vector queries.
+ */
+/*package-private*/ final class DocAndScoreQuery extends Query {
+
+  private final int[] docs;
+  private final float[] scores;
+  private final int[] segmentStarts;
+  private final Object contextIdentity;
+
+  private DocAndScoreQuery(
+      int[] docs, float[] scores, int[] segmentStarts, Object contextIdentity) {
+    this.docs = docs;
+    this.scores = scores;
+    this.segmentStarts = segmentStarts;
+    this.contextIdentity = contextIdentity;
+  }
+
+  /** Creates a query matching the given hits, whose doc ids are relative to the top-level reader. */
+  static DocAndScoreQuery create(IndexReader reader, ScoreDoc[] hits) {
+    ScoreDoc[] sorted = hits.clone();
+    Arrays.sort(sorted, (a, b) -> Integer.compare(a.doc, b.doc));
+    int[] docs = new int[sorted.length];
+    float[] scores = new float[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      docs[i] = sorted[i].doc;
+      scores[i] = sorted[i].score;
+    }
+    List<LeafReaderContext> leaves = reader.leaves();
+    int[] segmentStarts = new int[leaves.size() + 1];
+    for (int i = 0; i < leaves.size(); i++) {
+      int docBase = leaves.get(i).docBase;
+      int idx = Arrays.binarySearch(docs, docBase);
+      segmentStarts[i] = idx < 0 ? -1 - idx : idx;
+    }
+    segmentStarts[leaves.size()] = docs.length;
+    return new DocAndScoreQuery(docs, scores, segmentStarts, reader.getContext().id());
+  }
+
+  @Override
+  public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost)
+      throws IOException {
+    if (searcher.getIndexReader().getContext().id() != contextIdentity) {
+      throw new IllegalStateException("This DocAndScoreQuery was created by a different reader");
+    }
+    return new Weight(this) {
+      @Override
+      public Explanation explain(LeafReaderContext context, int doc) throws IOException {
+        int found = Arrays.binarySearch(docs, doc + context.docBase);
+        if (found < 0) {
+          return Explanation.noMatch("not in top results");
+        }
+        return Explanation.match(scores[found] * boost, "within top results");
+      }
+
+      @Override
+      public ScorerSupplier scorerSupplier(LeafReaderContext context) throws IOException {
+        final int lower = segmentStarts[context.ord];
+        final int upper = segmentStarts[context.ord + 1];
+        if (lower == upper) {
+          return null;
+        }
+        return new DefaultScorerSupplier(new DocAndScoreScorer(context.docBase, lower, upper));
+      }
+
+      @Override
+      public boolean isCacheable(LeafReaderContext ctx) {
+        return true;
+      }
+
+      final class DocAndScoreScorer extends Scorer {
+        final int docBase, lower, upper;
+        int upTo = -1;
+
+        DocAndScoreScorer(int docBase, int lower, int upper) {
+          this.docBase = docBase;
+          this.lower = lower;
+          this.upper = upper;
+        }
+
+        @Override
+        public int docID() {
+          if (upTo == -1) {
+            return -1;
+          }
+          if (upTo >= upper) {
+            return DocIdSetIterator.NO_MORE_DOCS;
+          }
+          return docs[upTo] - docBase;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+          return new DocIdSetIterator() {
+            @Override
+            public int docID() {
+              return DocAndScoreScorer.this.docID();
+            }
+
+            @Override
+            public int nextDoc() {
+              if (upTo == -1) {
+                upTo = lower;
+              } else {
+                ++upTo;
+              }
+              return docID();
+            }
+
+            @Override
+            public int advance(int target) throws IOException {
+              return slowAdvance(target);
+            }
+
+            @Override
+            public long cost() {
+              return upper - lower;
+            }
+          };
+        }
+
+        @Override
+        public float getMaxScore(int docId) {
+          float maxScore = 0;
+          for (int idx = Math.max(lower, upTo); idx < upper && docs[idx] - docBase <= docId; idx++) {
+            maxScore = Math.max(maxScore, scores[idx]);
+          }
+          return maxScore * boost;
+        }
+
+        @Override
+        public float score() {
+          return scores[upTo] * boost;
+        }
+      }
+    };
+  }
+
+  @Override
+  public String toString(String field) {
+    return "DocAndScoreQuery[" + docs.length + " docs]";
+  }
+
+  @Override
+  public void visit(QueryVisitor visitor) {
+    visitor.visitLeaf(this);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (sameClassAs(obj) == false) {
+      return false;
+    }
+    DocAndScoreQuery other = (DocAndScoreQuery) obj;
+    return contextIdentity == other.contextIdentity
+        && Arrays.equals(docs, other.docs)
+        && Arrays.equals(scores, other.scores);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        classHash(), contextIdentity, Arrays.hashCode(docs), Arrays.hashCode(scores));
+  }
+}
@@ -37,7 +37,7 @@ final class IndexInputInputStream extends InputStream {
       return -1;
     }
     pos++;
-    return in.readByte();
+    return in.readByte() & 0xFF;
   }
 
   @Override
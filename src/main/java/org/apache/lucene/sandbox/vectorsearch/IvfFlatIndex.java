@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.vectorValue;
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.KnnVectorValues;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.IOSupplier;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.VectorUtil;
+import org.apache.lucene.util.hnsw.RandomVectorScorer;
+
+/**
+ * An inverted file index of the vectors, partitioned by k-means in about {@code sqrt(n)} lists, up
+ * to {@link #MAX_LISTS}. Searches score the centroids, and then score exactly the vectors of the
+ * {@code nProbes} lists of the best centroids.
+ *
+ * <p>The index is written as: the number of lists and the dimensions, the centroids, the
+ * offsets of the lists, and the ordinals of the vectors of each list.
+ */
+/*package-private*/ final class IvfFlatIndex {
+
+  // The maximum number of lists, as cuVS' default n_lists
+  static final int MAX_LISTS = 1024;
+  // The maximum number of vectors per list sampled to train the centroids
+  static final int MAX_SAMPLES_PER_LIST = 256;
+  // The maximum number of vectors sampled to train the centroids, which are copied on the heap
+  static final int MAX_SAMPLE_SIZE = 1 << 15;
+  static final int KMEANS_ITERATIONS = 10;
+  // The default number of lists probed per search, as cuVS' n_probes
+  static final int DEFAULT_NPROBES = 20;
+
+  private IvfFlatIndex() {}
+
+  /** Returns the number of lists of an index of the given number of vectors. */
+  static int numLists(int count) {
+    return Math.max(1, Math.min(MAX_LISTS, Math.min(count, (int) Math.round(Math.sqrt(count)))));
+  }
+
+  /** Returns the number of vectors sampled to train the given number of lists. */
+  static int sampleSize(int count, int numLists) {
+    return Math.min(count, Math.min(MAX_SAMPLE_SIZE, numLists * MAX_SAMPLES_PER_LIST));
+  }
+
+  /**
+   * Trains the centroids, partitions the vectors, and writes the index. The vectors are iterated
+   * twice, once to copy the sample the centroids are trained on, and once to assign them to their
+   * list, so the supplier must return new vector values on each call, e.g. merged vector values,
+   * which can only be iterated once.
+   */
+  static void write(DataOutput out, IOSupplier<KnnVectorValues> vectors) throws IOException {
+    KnnVectorValues vectorValues = vectors.get();
+    int count = vectorValues.size();
+    int dims = vectorValues.dimension();
+    int numLists = numLists(count);
+    Random random = new Random(42L);
+    float[][] centroids = train(sample(vectorValues, numLists, random), numLists, random);
+
+    int[] listSizes = new int[numLists];
+    int[] assignments = new int[count];
+    float[] scratch = new float[dims];
+    vectorValues = vectors.get();
+    KnnVectorValues.DocIndexIterator iter = vectorValues.iterator();
+    for (int docV = iter.nextDoc(); docV != NO_MORE_DOCS; docV = iter.nextDoc()) {
+      int ord = iter.index();
+      assignments[ord] = nearestCentroid(centroids, vectorValue(vectorValues, ord, scratch));
+      listSizes[assignments[ord]]++;
+    }
+    int[] offsets = new int[numLists + 1];
+    for (int i = 0; i < numLists; i++) {
+      offsets[i + 1] = offsets[i] + listSizes[i];
+    }
+
+    out.writeInt(numLists);
+    out.writeInt(dims);
+    for (float[] centroid : centroids) {
+      for (float v : centroid) {
+        out.writeInt(Float.floatToIntBits(v));
+      }
+    }
+    for (int offset : offsets) {
+      out.writeInt(offset);
+    }
+    // the ordinals of each list, in increasing order
+    int[] ords = new int[count];
+    int[] next = Arrays.copyOf(offsets, numLists);
+    for (int ord = 0; ord < count; ord++) {
+      ords[next[assignments[ord]]++] = ord;
+    }
+    for (int ord : ords) {
+      out.writeInt(ord);
+    }
+  }
+
+  /** Returns a copy of a random sample of the given vector values, iterated once. */
+  static float[][] sample(KnnVectorValues vectorValues, int numLists, Random random)
+      throws IOException {
+    int count = vectorValues.size();
+    int sampleSize = sampleSize(count, numLists);
+    int[] sampleOrds = new int[count];
+    Arrays.setAll(sampleOrds, i -> i);
+    // partial shuffle, the sample is the first sampleSize ordinals
+    for (int i = 0; i < sampleSize; i++) {
+      int j = i + random.nextInt(count - i);
+      int tmp = sampleOrds[i];
+      sampleOrds[i] = sampleOrds[j];
+      sampleOrds[j] = tmp;
+    }
+    Arrays.sort(sampleOrds, 0, sampleSize);
+
+    float[][] sample = new float[sampleSize][];
+    int i = 0;
+    KnnVectorValues.DocIndexIterator iter = vectorValues.iterator();
+    for (int docV = iter.nextDoc(); docV != NO_MORE_DOCS && i < sampleSize; docV = iter.nextDoc()) {
+      int ord = iter.index();
+      if (ord == sampleOrds[i]) {
+        // float values may reuse their vector
+        sample[i++] = vectorValue(vectorValues, ord, null).clone();
+      }
+    }
+    assert i == sampleSize : "sampled " + i + " vectors of " + sampleSize;
+    return sample;
+  }
+
+  /** Trains the centroids of the given number of lists with k-means, on a sample of vectors. */
+  static float[][] train(float[][] sample, int numLists, Random random) {
+    int dims = sample[0].length;
+    float[][] centroids = new float[numLists][];
+    for (int i = 0; i < numLists; i++) {
+      centroids[i] = sample[i].clone();
+    }
+    float[][] sums = new float[numLists][dims];
+    int[] sizes = new int[numLists];
+    for (int iter = 0; iter < KMEANS_ITERATIONS; iter++) {
+      for (float[] sum : sums) {
+        Arrays.fill(sum, 0f);
+      }
+      Arrays.fill(sizes, 0);
+      for (float[] vector : sample) {
+        int c = nearestCentroid(centroids, vector);
+        float[] sum = sums[c];
+        for (int d = 0; d < dims; d++) {
+          sum[d] += vector[d];
+        }
+        sizes[c]++;
+      }
+      for (int c = 0; c < numLists; c++) {
+        if (sizes[c] == 0) {
+          // restart empty lists from a random vector of the sample
+          centroids[c] = sample[random.nextInt(sample.length)].clone();
+          continue;
+        }
+        for (int d = 0; d < dims; d++) {
+          centroids[c][d] = sums[c][d] / sizes[c];
+        }
+      }
+    }
+    return centroids;
+  }
+
+  private static int nearestCentroid(float[][] centroids, float[] vector) {
+    int nearest = 0;
+    float nearestDistance = Float.POSITIVE_INFINITY;
+    for (int c = 0; c < centroids.length; c++) {
+      float distance = VectorUtil.squareDistance(centroids[c], vector);
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearest = c;
+      }
+    }
+    return nearest;
+  }
+
+  /**
+   * Searches the index of the given input: scores the centroids by the similarity to the target,
+   * and collects the accepted vectors of the {@code nProbes} best lists, scored by the scorer.
+   */
+  static void search(
+      IndexInput in,
+      VectorSimilarityFunction similarityFunction,
+      float[] target,
+      int nProbes,
+      RandomVectorScorer scorer,
+      KnnCollector knnCollector,
+      Bits acceptedOrds)
+      throws IOException {
+    int numLists = in.readInt();
+    int dims = in.readInt();
+    if (dims != target.length) {
+      throw new CorruptIndexException("ivf index of " + dims + " dims, got: " + target.length, in);
+    }
+    float[] centroid = new float[dims];
+    float[] scores = new float[numLists];
+    for (int c = 0; c < numLists; c++) {
+      in.readFloats(centroid, 0, dims);
+      float score = centroidScore(similarityFunction, target, centroid);
+      scores[c] = Float.isNaN(score) ? Float.NEGATIVE_INFINITY : score; // zero cosine vectors
+    }
+    // the lists by decreasing score, then increasing list, sorted as primitives: the sortable
+    // bits of the negated score, followed by the list
+    long[] lists = new long[numLists];
+    for (int c = 0; c < numLists; c++) {
+      lists[c] = ((long) NumericUtils.floatToSortableInt(-scores[c]) << 32) | c;
+    }
+    Arrays.sort(lists);
+
+    long offsetsStart = in.getFilePointer();
+    long ordsStart = offsetsStart + (numLists + 1L) * Integer.BYTES;
+    RandomAccessInput data = in.randomAccessSlice(0L, in.length());
+    for (int p = 0; p < Math.min(nProbes, numLists); p++) {
+      int list = (int) lists[p];
+      int from = data.readInt(offsetsStart + (long) list * Integer.BYTES);
+      int to = data.readInt(offsetsStart + (list + 1L) * Integer.BYTES);
+      for (int i = from; i < to; i++) {
+        int ord = data.readInt(ordsStart + (long) i * Integer.BYTES);
+        if (acceptedOrds != null && acceptedOrds.get(ord) == false) {
+          continue;
+        }
+        if (knnCollector.earlyTerminated()) {
+          return;
+        }
+        knnCollector.incVisitedCount(1);
+        knnCollector.collect(scorer.ordToDoc(ord), scorer.score(ord));
+      }
+    }
+  }
+
+  // The raw similarity of the target to a centroid, higher is more similar. The normalized
+  // scores of the similarity functions are not used, as they expect unit or byte vectors.
+  private static float centroidScore(
+      VectorSimilarityFunction similarityFunction, float[] target, float[] centroid) {
+    return switch (similarityFunction) {
+      case EUCLIDEAN -> -VectorUtil.squareDistance(target, centroid);
+      case COSINE -> VectorUtil.cosine(target, centroid);
+      case DOT_PRODUCT, MAXIMUM_INNER_PRODUCT -> VectorUtil.dotProduct(target, centroid);
+    };
+  }
+}
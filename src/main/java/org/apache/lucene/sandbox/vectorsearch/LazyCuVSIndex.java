@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Holds the CuVSIndex of a field, which is loaded at most once, on the first call to {@link
+ * #get()}. Concurrent callers wait for the one loading the index.
+ */
+/*package-private*/ final class LazyCuVSIndex implements Closeable {
+
+  /** Loads the index. */
+  interface Loader {
+    CuVSIndex load() throws IOException;
+  }
+
+  private final Loader loader;
+  private volatile CuVSIndex index;
+  private volatile long loadNanos = -1L;
+  private boolean closed; // guarded by this
+
+  LazyCuVSIndex(Loader loader) {
+    this.loader = loader;
+  }
+
+  /** Returns the index, loading it if needed. */
+  CuVSIndex get() throws IOException {
+    CuVSIndex result = index;
+    if (result == null) {
+      synchronized (this) {
+        if (closed) {
+          throw new IllegalStateException("index is closed");
+        }
+        result = index;
+        if (result == null) {
+          long startTime = System.nanoTime();
+          result = loader.load();
+          loadNanos = System.nanoTime() - startTime;
+          index = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Whether the index has been loaded. */
+  boolean isLoaded() {
+    return index != null;
+  }
+
+  /** Returns how long loading the index took, in nanoseconds, or -1 if it is not loaded. */
+  long loadNanos() {
+    return loadNanos;
+  }
+
+  /** Whether this holder has been closed. */
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (index != null) {
+      index.close();
+    }
+  }
+}
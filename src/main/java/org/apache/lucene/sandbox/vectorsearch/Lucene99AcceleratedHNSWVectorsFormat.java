@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_INTERMEDIATE_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_WRITER_THREADS;
+
+import java.io.IOException;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.KnnVectorsReader;
+import org.apache.lucene.codecs.hnsw.DefaultFlatVectorScorer;
+import org.apache.lucene.codecs.hnsw.FlatVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99FlatVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsReader;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+
+/**
+ * KnnVectorsFormat that builds the graph of each field with CAGRA, on the GPU, and writes it in
+ * the on-disk layout of {@link Lucene99HnswVectorsFormat}.
+ *
+ * <p>The written segments are read by {@link Lucene99HnswVectorsReader}, and searched on the CPU
+ * by Lucene's own HNSW searcher, so they can be served by nodes without a GPU. The format has the
+ * same name as {@link Lucene99HnswVectorsFormat}, so that such nodes can read the segments without
+ * this class, when the format is used per field. Only writing requires a GPU.
+ */
+public class Lucene99AcceleratedHNSWVectorsFormat extends KnnVectorsFormat {
+
+  static final String NAME = "Lucene99HnswVectorsFormat";
+
+  // The file layout of Lucene99HnswVectorsFormat, whose constants are package-private
+  static final String META_CODEC_NAME = "Lucene99HnswVectorsFormatMeta";
+  static final String VECTOR_INDEX_CODEC_NAME = "Lucene99HnswVectorsFormatIndex";
+  static final String META_EXTENSION = "vem";
+  static final String VECTOR_INDEX_EXTENSION = "vex";
+  static final int VERSION_CURRENT = 1; // VERSION_GROUPVARINT
+  static final int DIRECT_MONOTONIC_BLOCK_SHIFT = 16;
+
+  /** The format for storing, reading, and merging raw vectors on disk. */
+  private static final FlatVectorsFormat flatVectorsFormat =
+      new Lucene99FlatVectorsFormat(DefaultFlatVectorScorer.INSTANCE);
+
+  final int maxDimensions = 4096;
+  final int cuvsWriterThreads;
+  final int intGraphDegree;
+  final int graphDegree;
+
+  /** Creates a Lucene99AcceleratedHNSWVectorsFormat, with default values. */
+  public Lucene99AcceleratedHNSWVectorsFormat() {
+    this(DEFAULT_WRITER_THREADS, DEFAULT_INTERMEDIATE_GRAPH_DEGREE, DEFAULT_GRAPH_DEGREE);
+  }
+
+  /**
+   * Creates a Lucene99AcceleratedHNSWVectorsFormat, with the given threads and graph degrees. The
+   * graph degree is the maximum number of neighbours of a node on the bottom level of the HNSW
+   * graph, i.e. twice Lucene's {@code maxConn}.
+   */
+  public Lucene99AcceleratedHNSWVectorsFormat(
+      int cuvsWriterThreads, int intGraphDegree, int graphDegree) {
+    super(NAME);
+    if (graphDegree < 2 || graphDegree > intGraphDegree) {
+      throw new IllegalArgumentException(
+          "graphDegree must be in [2, intGraphDegree], got: "
+              + graphDegree
+              + ", intGraphDegree="
+              + intGraphDegree);
+    }
+    this.cuvsWriterThreads = cuvsWriterThreads;
+    this.intGraphDegree = intGraphDegree;
+    this.graphDegree = graphDegree;
+  }
+
+  @Override
+  public Lucene99AcceleratedHNSWVectorsWriter fieldsWriter(SegmentWriteState state)
+      throws IOException {
+    CuVSVectorsFormat.checkSupported();
+    var flatWriter = flatVectorsFormat.fieldsWriter(state);
+    return new Lucene99AcceleratedHNSWVectorsWriter(
+        state,
+        cuvsWriterThreads,
+        intGraphDegree,
+        graphDegree,
+        CuVSVectorsFormat.resources,
+        flatWriter);
+  }
+
+  /** Returns Lucene's own HNSW reader, which does not require a GPU. */
+  @Override
+  public KnnVectorsReader fieldsReader(SegmentReadState state) throws IOException {
+    return new Lucene99HnswVectorsFormat().fieldsReader(state);
+  }
+
+  @Override
+  public int getMaxDimensions(String fieldName) {
+    return maxDimensions;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("Lucene99AcceleratedHNSWVectorsFormat(");
+    sb.append("cuvsWriterThreads=").append(cuvsWriterThreads);
+    sb.append(", intGraphDegree=").append(intGraphDegree);
+    sb.append(", graphDegree=").append(graphDegree);
+    sb.append(")");
+    return sb.toString();
+  }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsReader.handleThrowable;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.CUVS_COMPONENT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.distFuncToOrd;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.nanosToMillis;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.DIRECT_MONOTONIC_BLOCK_SHIFT;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.META_CODEC_NAME;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.META_EXTENSION;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.VECTOR_INDEX_CODEC_NAME;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.VECTOR_INDEX_EXTENSION;
+import static org.apache.lucene.sandbox.vectorsearch.Lucene99AcceleratedHNSWVectorsFormat.VERSION_CURRENT;
+import static org.apache.lucene.util.RamUsageEstimator.shallowSizeOfInstance;
+
+import com.nvidia.cuvs.CagraIndex;
+import com.nvidia.cuvs.CagraIndexParams;
+import com.nvidia.cuvs.CagraIndexParams.CagraGraphBuildAlgo;
+import com.nvidia.cuvs.CuVSResources;
+import com.nvidia.cuvs.Dataset;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.KnnFieldVectorsWriter;
+import org.apache.lucene.codecs.KnnVectorsWriter;
+import org.apache.lucene.codecs.hnsw.FlatVectorsWriter;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.KnnVectorValues;
+import org.apache.lucene.index.MergeState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Sorter;
+import org.apache.lucene.internal.hppc.IntArrayList;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.packed.DirectMonotonicWriter;
+
+/**
+ * KnnVectorsWriter that builds a CAGRA graph on the GPU, for each field, and writes it as a Lucene
+ * HNSW graph. The graph is serialized by cuVS in the hnswlib layout, whose levels and neighbour
+ * lists are then re-encoded as {@link
+ * org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsWriter} does.
+ */
+public class Lucene99AcceleratedHNSWVectorsWriter extends KnnVectorsWriter {
+
+  private static final long SHALLOW_RAM_BYTES_USED =
+      shallowSizeOfInstance(Lucene99AcceleratedHNSWVectorsWriter.class);
+
+  private final SegmentWriteState state;
+  private final int cuvsWriterThreads;
+  private final int intGraphDegree;
+  private final int graphDegree;
+  private final CuVSResources resources;
+  private final CuVSBuildScheduler buildScheduler;
+  private final CuVSBuildScheduler.Priority buildPriority; // merges are built after flushes
+
+  private final FlatVectorsWriter flatVectorsWriter; // for writing the raw vectors
+  private final List<CuVSFieldWriter<?>> fields = new ArrayList<>();
+  private final IndexOutput meta, vectorIndex;
+  private final InfoStream infoStream;
+  private boolean finished;
+
+  public Lucene99AcceleratedHNSWVectorsWriter(
+      SegmentWriteState state,
+      int cuvsWriterThreads,
+      int intGraphDegree,
+      int graphDegree,
+      CuVSResources resources,
+      FlatVectorsWriter flatVectorsWriter)
+      throws IOException {
+    this.state = state;
+    this.cuvsWriterThreads = cuvsWriterThreads;
+    this.intGraphDegree = intGraphDegree;
+    this.graphDegree = graphDegree;
+    this.resources = resources;
+    this.buildScheduler = CuVSVectorsFormat.buildScheduler();
+    this.buildPriority = CuVSVectorsWriter.buildPriority(state);
+    this.flatVectorsWriter = flatVectorsWriter;
+    this.infoStream = state.infoStream;
+
+    String metaFileName =
+        IndexFileNames.segmentFileName(
+            state.segmentInfo.name, state.segmentSuffix, META_EXTENSION);
+    String indexDataFileName =
+        IndexFileNames.segmentFileName(
+            state.segmentInfo.name, state.segmentSuffix, VECTOR_INDEX_EXTENSION);
+
+    boolean success = false;
+    try {
+      meta = state.directory.createOutput(metaFileName, state.context);
+      vectorIndex = state.directory.createOutput(indexDataFileName, state.context);
+      CodecUtil.writeIndexHeader(
+          meta, META_CODEC_NAME, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
+      CodecUtil.writeIndexHeader(
+          vectorIndex,
+          VECTOR_INDEX_CODEC_NAME,
+          VERSION_CURRENT,
+          state.segmentInfo.getId(),
+          state.segmentSuffix);
+      success = true;
+    } finally {
+      if (success == false) {
+        IOUtils.closeWhileHandlingException(this);
+      }
+    }
+  }
+
+  @Override
+  public KnnFieldVectorsWriter<?> addField(FieldInfo fieldInfo) throws IOException {
+    var writer = Objects.requireNonNull(flatVectorsWriter.addField(fieldInfo));
+    var cuvsFieldWriter = new CuVSFieldWriter<>(fieldInfo, writer);
+    fields.add(cuvsFieldWriter);
+    return writer;
+  }
+
+  private void info(String msg) {
+    if (infoStream.isEnabled(CUVS_COMPONENT)) {
+      infoStream.message(CUVS_COMPONENT, msg);
+    }
+  }
+
+  @Override
+  public void flush(int maxDoc, Sorter.DocMap sortMap) throws IOException {
+    flatVectorsWriter.flush(maxDoc, sortMap);
+    for (var field : fields) {
+      Dataset dataset =
+          sortMap == null
+              ? CuVSVectorsWriter.createDataset(field)
+              : CuVSVectorsWriter.createSortedDataset(field, sortMap);
+      writeField(field.fieldInfo(), dataset);
+    }
+  }
+
+  @Override
+  public void mergeOneField(FieldInfo fieldInfo, MergeState mergeState) throws IOException {
+    flatVectorsWriter.mergeOneField(fieldInfo, mergeState);
+    final KnnVectorValues mergedVectorValues =
+        switch (fieldInfo.getVectorEncoding()) {
+          case BYTE ->
+              KnnVectorsWriter.MergedVectorValues.mergeByteVectorValues(fieldInfo, mergeState);
+          case FLOAT32 ->
+              KnnVectorsWriter.MergedVectorValues.mergeFloatVectorValues(fieldInfo, mergeState);
+        };
+    Dataset dataset = Dataset.create(mergedVectorValues.size(), mergedVectorValues.dimension());
+    CuVSVectorsWriter.getVectorData(mergedVectorValues, dataset);
+    writeField(fieldInfo, dataset);
+  }
+
+  /**
+   * The levels of a written graph: the nodes of each level above the bottom one, and the length
+   * of the encoded neighbours of each node, per level.
+   */
+  private record GraphLevels(int maxConn, int[][] nodesByLevel, int[][] offsetsByLevel) {
+    int numLevels() {
+      return offsetsByLevel.length;
+    }
+  }
+
+  private void writeField(FieldInfo fieldInfo, Dataset dataset) throws IOException {
+    final int count = dataset.size();
+    long vectorIndexOffset = vectorIndex.getFilePointer();
+    GraphLevels graph = null;
+    if (count > graphDegree) {
+      long estimatedBytes =
+          CuVSBuildScheduler.estimateBuildBytes(
+              count, dataset.dimensions(), intGraphDegree, graphDegree);
+      graph =
+          buildScheduler.run(
+              buildPriority,
+              estimatedBytes,
+              () -> {
+                try {
+                  return writeCagraGraph(dataset);
+                } catch (Throwable t) {
+                  handleThrowable(t);
+                  return null;
+                }
+              });
+    } else if (count > 0) {
+      // too few vectors for CAGRA, but a complete graph is exact and within the degree
+      graph = writeCompleteGraph(count);
+    }
+    long vectorIndexLength = vectorIndex.getFilePointer() - vectorIndexOffset;
+    writeMeta(fieldInfo, vectorIndexOffset, vectorIndexLength, count, graph);
+  }
+
+  private CagraIndexParams cagraIndexParams() {
+    return new CagraIndexParams.Builder()
+        .withNumWriterThreads(cuvsWriterThreads)
+        .withIntermediateGraphDegree(intGraphDegree)
+        .withGraphDegree(graphDegree)
+        .withCagraGraphBuildAlgo(CagraGraphBuildAlgo.NN_DESCENT)
+        .build();
+  }
+
+  private GraphLevels writeCagraGraph(Dataset dataset) throws Throwable {
+    long startTime = System.nanoTime();
+    var index =
+        CagraIndex.newBuilder(resources)
+            .withDataset(dataset)
+            .withIndexParams(cagraIndexParams())
+            .build();
+    info(
+        "Cagra index created in "
+            + nanosToMillis(System.nanoTime() - startTime)
+            + "ms, with "
+            + dataset.size()
+            + " vectors");
+
+    String tmpFileName = null;
+    Path cuvsTmpFile = Files.createTempFile(resources.tempDirectory(), "tmpindex", "hnsw");
+    try {
+      try (IndexOutput tmp =
+              state.directory.createTempOutput(state.segmentInfo.name, "hnsw", state.context);
+          var os = new IndexOutputOutputStream(tmp)) {
+        tmpFileName = tmp.getName();
+        index.serializeToHNSW(os, cuvsTmpFile);
+      } finally {
+        index.destroyIndex();
+        Files.deleteIfExists(cuvsTmpFile);
+      }
+      startTime = System.nanoTime();
+      try (IndexInput in = state.directory.openInput(tmpFileName, IOContext.READONCE)) {
+        GraphLevels graph = writeHnswlibGraph(in, dataset.size());
+        info("HNSW graph converted in " + nanosToMillis(System.nanoTime() - startTime) + "ms");
+        return graph;
+      }
+    } finally {
+      if (tmpFileName != null) {
+        IOUtils.deleteFilesIgnoringExceptions(state.directory, tmpFileName);
+      }
+    }
+  }
+
+  /**
+   * Re-encodes the graph serialized by hnswlib, as Lucene99HnswVectorsWriter does. The input is
+   * read sequentially: the header, the bottom level of all nodes, with their vectors, then the
+   * upper levels of each node, if any.
+   */
+  private GraphLevels writeHnswlibGraph(IndexInput in, int count) throws IOException {
+    in.readLong(); // offsetLevel0
+    in.readLong(); // maxElements
+    final long elementCount = in.readLong();
+    final long sizeDataPerElement = in.readLong();
+    in.readLong(); // labelOffset
+    in.readLong(); // offsetData
+    in.readInt(); // maxLevel
+    in.readInt(); // entryPoint, Lucene uses the first node of the top level
+    final int maxM = Math.toIntExact(in.readLong());
+    final int maxM0 = Math.toIntExact(in.readLong());
+    in.readLong(); // M
+    in.readLong(); // mult, a double
+    in.readLong(); // efConstruction
+    if (elementCount != count) {
+      throw new CorruptIndexException(
+          "expected " + count + " nodes in the hnsw graph, got: " + elementCount, in);
+    }
+
+    int[] neighbors = new int[Math.max(maxM0, maxM)];
+    int[] scratch = new int[neighbors.length];
+    int maxConn = 0;
+    int[] level0Offsets = new int[count];
+    for (int node = 0; node < count; node++) {
+      int size = readNeighbors(in, node, count, maxM0, neighbors);
+      in.skipBytes(sizeDataPerElement - Integer.BYTES * (1L + maxM0));
+      level0Offsets[node] = writeNeighbors(neighbors, size, scratch);
+      maxConn = Math.max(maxConn, (size + 1) / 2);
+    }
+
+    // the upper levels are usually small, and buffered to be written after the bottom one
+    List<IntArrayList> nodesByLevel = new ArrayList<>();
+    List<List<int[]>> neighborsByLevel = new ArrayList<>();
+    final long sizeLinksPerElement = Integer.BYTES * (1L + maxM);
+    for (int node = 0; node < count; node++) {
+      int linkListSize = in.readInt();
+      int numLevels = Math.toIntExact(linkListSize / sizeLinksPerElement);
+      for (int level = 1; level <= numLevels; level++) {
+        int size = readNeighbors(in, node, count, maxM, neighbors);
+        if (nodesByLevel.size() < level) {
+          nodesByLevel.add(new IntArrayList());
+          neighborsByLevel.add(new ArrayList<>());
+        }
+        nodesByLevel.get(level - 1).add(node);
+        neighborsByLevel.get(level - 1).add(Arrays.copyOf(neighbors, size));
+        maxConn = Math.max(maxConn, size);
+      }
+    }
+
+    int[][] nodes = new int[1 + nodesByLevel.size()][];
+    int[][] offsets = new int[1 + nodesByLevel.size()][];
+    offsets[0] = level0Offsets;
+    for (int level = 1; level < offsets.length; level++) {
+      nodes[level] = nodesByLevel.get(level - 1).toArray();
+      List<int[]> levelNeighbors = neighborsByLevel.get(level - 1);
+      offsets[level] = new int[nodes[level].length];
+      for (int i = 0; i < nodes[level].length; i++) {
+        int[] nodeNeighbors = levelNeighbors.get(i);
+        offsets[level][i] = writeNeighbors(nodeNeighbors, nodeNeighbors.length, scratch);
+      }
+    }
+    return new GraphLevels(Math.max(1, maxConn), nodes, offsets);
+  }
+
+  /**
+   * Reads a neighbour list, of at most {@code maxSize} entries, dropping any invalid or self
+   * reference. Returns the number of valid neighbours.
+   */
+  private static int readNeighbors(IndexInput in, int node, int count, int maxSize, int[] dst)
+      throws IOException {
+    int size = in.readInt() & 0xFFFF; // the upper bits are flags
+    if (size > maxSize) {
+      throw new CorruptIndexException(
+          "node " + node + " has " + size + " neighbours, more than: " + maxSize, in);
+    }
+    int validSize = 0;
+    for (int i = 0; i < maxSize; i++) {
+      int neighbor = in.readInt();
+      if (i < size && neighbor >= 0 && neighbor < count && neighbor != node) {
+        dst[validSize++] = neighbor;
+      }
+    }
+    return validSize;
+  }
+
+  private GraphLevels writeCompleteGraph(int count) throws IOException {
+    int[] neighbors = new int[count];
+    int[] scratch = new int[count];
+    int[] offsets = new int[count];
+    for (int node = 0; node < count; node++) {
+      int size = 0;
+      for (int neighbor = 0; neighbor < count; neighbor++) {
+        if (neighbor != node) {
+          neighbors[size++] = neighbor;
+        }
+      }
+      offsets[node] = writeNeighbors(neighbors, size, scratch);
+    }
+    return new GraphLevels(Math.max(1, (count + 1) / 2), new int[1][], new int[][] {offsets});
+  }
+
+  /**
+   * Writes the given neighbours, sorted and delta encoded, and returns the number of bytes written.
+   */
+  private int writeNeighbors(int[] neighbors, int size, int[] scratch) throws IOException {
+    long offsetStart = vectorIndex.getFilePointer();
+    Arrays.sort(neighbors, 0, size);
+    int actualSize = 0;
+    if (size > 0) {
+      scratch[0] = neighbors[0];
+      actualSize = 1;
+    }
+    for (int i = 1; i < size; i++) {
+      if (neighbors[i - 1] == neighbors[i]) {
+        continue;
+      }
+      scratch[actualSize++] = neighbors[i] - neighbors[i - 1];
+    }
+    // Write the size after duplicates are removed
+    vectorIndex.writeVInt(actualSize);
+    vectorIndex.writeGroupVInts(scratch, actualSize);
+    return Math.toIntExact(vectorIndex.getFilePointer() - offsetStart);
+  }
+
+  private void writeMeta(
+      FieldInfo field, long vectorIndexOffset, long vectorIndexLength, int count, GraphLevels graph)
+      throws IOException {
+    meta.writeInt(field.number);
+    meta.writeInt(field.getVectorEncoding().ordinal());
+    meta.writeInt(distFuncToOrd(field.getVectorSimilarityFunction()));
+    meta.writeVLong(vectorIndexOffset);
+    meta.writeVLong(vectorIndexLength);
+    meta.writeVInt(field.getVectorDimension());
+    meta.writeInt(count);
+    if (graph == null) {
+      meta.writeVInt(Math.max(1, graphDegree / 2));
+      meta.writeVInt(0);
+      return;
+    }
+    meta.writeVInt(graph.maxConn());
+    meta.writeVInt(graph.numLevels());
+    long valueCount = count;
+    for (int level = 1; level < graph.numLevels(); level++) {
+      int[] nodes = graph.nodesByLevel()[level];
+      valueCount += nodes.length;
+      meta.writeVInt(nodes.length); // number of nodes on a level
+      for (int i = 0; i < nodes.length; i++) {
+        meta.writeVInt(i == 0 ? nodes[0] : nodes[i] - nodes[i - 1]);
+      }
+    }
+    long start = vectorIndex.getFilePointer();
+    meta.writeLong(start);
+    meta.writeVInt(DIRECT_MONOTONIC_BLOCK_SHIFT);
+    final DirectMonotonicWriter memoryOffsetsWriter =
+        DirectMonotonicWriter.getInstance(
+            meta, vectorIndex, valueCount, DIRECT_MONOTONIC_BLOCK_SHIFT);
+    long cumulativeOffsetSum = 0;
+    for (int[] levelOffsets : graph.offsetsByLevel()) {
+      for (int v : levelOffsets) {
+        memoryOffsetsWriter.add(cumulativeOffsetSum);
+        cumulativeOffsetSum += v;
+      }
+    }
+    memoryOffsetsWriter.finish();
+    meta.writeLong(vectorIndex.getFilePointer() - start);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (finished) {
+      throw new IllegalStateException("already finished");
+    }
+    finished = true;
+    flatVectorsWriter.finish();
+
+    if (meta != null) {
+      // write end of fields marker
+      meta.writeInt(-1);
+      CodecUtil.writeFooter(meta);
+    }
+    if (vectorIndex != null) {
+      CodecUtil.writeFooter(vectorIndex);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOUtils.close(meta, vectorIndex, flatVectorsWriter);
+  }
+
+  @Override
+  public long ramBytesUsed() {
+    long total = SHALLOW_RAM_BYTES_USED;
+    for (var field : fields) {
+      total += field.ramBytesUsed();
+    }
+    return total;
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Objects;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.MemorySegmentAccessInput;
+
+/**
+ * InputStream over a memory segment, typically a slice of a file mapped by MMapDirectory. Reads
+ * copy straight from the mapped memory, and {@link #transferTo(OutputStream)} hands the mapped
+ * memory to the output channel, without going through an intermediate buffer.
+ */
+final class MemorySegmentInputStream extends InputStream {
+
+  // the size of the chunks handed to the output channel
+  static final int TRANSFER_CHUNK_SIZE = 1 << 26;
+
+  private final MemorySegment segment;
+  private long pos = 0;
+
+  MemorySegmentInputStream(MemorySegment segment) {
+    this.segment = Objects.requireNonNull(segment);
+  }
+
+  /**
+   * Returns a stream over the given input, that reads from the mapped memory if the input is
+   * memory mapped. The input must stay open while the stream is used.
+   */
+  static InputStream of(IndexInput in) throws IOException {
+    if (in instanceof MemorySegmentAccessInput msai) {
+      MemorySegment segment = msai.segmentSliceOrNull(0L, in.length());
+      if (segment != null) {
+        return new MemorySegmentInputStream(segment);
+      }
+    }
+    return new IndexInputInputStream(in);
+  }
+
+  @Override
+  public int read() {
+    if (pos >= segment.byteSize()) {
+      return -1;
+    }
+    return segment.get(JAVA_BYTE, pos++) & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    if (len == 0) {
+      return 0;
+    }
+    long avail = segment.byteSize() - pos;
+    if (avail <= 0) {
+      return -1;
+    }
+    len = (int) Math.min(len, avail);
+    MemorySegment.copy(segment, JAVA_BYTE, pos, b, off, len);
+    pos += len;
+    return len;
+  }
+
+  @Override
+  public long skip(long n) {
+    long skipped = Math.max(0L, Math.min(n, segment.byteSize() - pos));
+    pos += skipped;
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    return (int) Math.min(Integer.MAX_VALUE, segment.byteSize() - pos);
+  }
+
+  @Override
+  public long transferTo(OutputStream out) throws IOException {
+    // writes to a file go directly from the mapped memory, through the file's channel
+    WritableByteChannel channel = Channels.newChannel(out);
+    long transferred = 0;
+    while (pos < segment.byteSize()) {
+      long len = Math.min(TRANSFER_CHUNK_SIZE, segment.byteSize() - pos);
+      ByteBuffer buffer = segment.asSlice(pos, len).asByteBuffer();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      pos += len;
+      transferred += len;
+    }
+    return transferred;
+  }
+}
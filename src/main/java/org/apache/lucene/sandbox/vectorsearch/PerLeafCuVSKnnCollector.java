@@ -15,52 +15,62 @@
  */
 package org.apache.lucene.sandbox.vectorsearch;
 
-import java.util.ArrayList;
-import java.util.List;
 import org.apache.lucene.search.KnnCollector;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.knn.KnnSearchStrategy;
 
-/** KnnCollector for CuVS */
+/**
+ * KnnCollector for CuVS, that keeps the top k hits in a fixed capacity min-heap of primitive doc
+ * ids and scores. Collecting does not allocate; {@link #topDocs()} drains the heap.
+ */
 /*package-private*/ class PerLeafCuVSKnnCollector implements KnnCollector {
 
-  public List<ScoreDoc> scoreDocs;
-  public int topK = 0;
-  public int iTopK = topK; // TODO getter, no setter
-  public int searchWidth = 1; // TODO getter, no setter
-  public int results = 0;
+  private final int topK;
+  private final long visitLimit;
+  private final KnnSearchStrategy searchStrategy;
+
+  // min-heap of the collected hits, the least competitive one at the root
+  private final int[] docs;
+  private final float[] scores;
+  private int size;
+  private long visitedCount;
+
+  public PerLeafCuVSKnnCollector(int topK) {
+    this(topK, Long.MAX_VALUE, CuVSSearchStrategy.DEFAULT);
+  }
 
-  public PerLeafCuVSKnnCollector(int topK, int iTopK, int searchWidth) {
-    super();
+  public PerLeafCuVSKnnCollector(int topK, long visitLimit, KnnSearchStrategy searchStrategy) {
+    if (topK < 0) {
+      throw new IllegalArgumentException("negative topK: " + topK);
+    }
     this.topK = topK;
-    this.iTopK = iTopK;
-    this.searchWidth = searchWidth;
-    scoreDocs = new ArrayList<ScoreDoc>();
+    this.visitLimit = visitLimit;
+    this.searchStrategy = searchStrategy;
+    this.docs = new int[topK];
+    this.scores = new float[topK];
   }
 
   @Override
   public boolean earlyTerminated() {
-    // TODO: may need implementation
-    return false;
+    return visitedCount >= visitLimit;
   }
 
   @Override
   public void incVisitedCount(int count) {
-    // TODO: may need implementation
+    assert count > 0;
+    visitedCount += count;
   }
 
   @Override
   public long visitedCount() {
-    // TODO: may need implementation
-    return 0;
+    return visitedCount;
   }
 
   @Override
   public long visitLimit() {
-    // TODO: may need implementation
-    return 0;
+    return visitLimit;
   }
 
   @Override
@@ -69,27 +79,96 @@ import org.apache.lucene.search.knn.KnnSearchStrategy;
   }
 
   @Override
-  @SuppressWarnings("cast")
   public boolean collect(int docId, float similarity) {
-    scoreDocs.add(new ScoreDoc(docId, similarity));
-    return true;
+    if (size < topK) {
+      docs[size] = docId;
+      scores[size] = similarity;
+      upHeap(size++);
+      return true;
+    }
+    if (topK > 0 && lessThan(docs[0], scores[0], docId, similarity)) {
+      docs[0] = docId;
+      scores[0] = similarity;
+      downHeap(0);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public float minCompetitiveSimilarity() {
-    // TODO: may need implementation
-    return 0;
+    if (topK == 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return size < topK ? Float.NEGATIVE_INFINITY : scores[0];
   }
 
+  /** Returns the collected hits, sorted by decreasing score. This drains the collector. */
   @Override
   public TopDocs topDocs() {
-    return new TopDocs(
-        new TotalHits(scoreDocs.size(), TotalHits.Relation.EQUAL_TO),
-        scoreDocs.toArray(new ScoreDoc[scoreDocs.size()]));
+    ScoreDoc[] scoreDocs = new ScoreDoc[size];
+    for (int i = size - 1; i >= 0; i--) {
+      scoreDocs[i] = new ScoreDoc(docs[0], scores[0]);
+      size--;
+      if (size > 0) {
+        docs[0] = docs[size];
+        scores[0] = scores[size];
+        downHeap(0);
+      }
+    }
+    TotalHits.Relation relation =
+        earlyTerminated()
+            ? TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO
+            : TotalHits.Relation.EQUAL_TO;
+    return new TopDocs(new TotalHits(visitedCount, relation), scoreDocs);
   }
 
   @Override
   public KnnSearchStrategy getSearchStrategy() {
-	return KnnSearchStrategy.Patience.DEFAULT;
+    return searchStrategy;
+  }
+
+  // Whether hit a is less competitive than hit b. On equal scores, the lower doc id wins.
+  private static boolean lessThan(int docA, float scoreA, int docB, float scoreB) {
+    return scoreA < scoreB || (scoreA == scoreB && docA > docB);
+  }
+
+  private void upHeap(int i) {
+    final int doc = docs[i];
+    final float score = scores[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (lessThan(doc, score, docs[parent], scores[parent]) == false) {
+        break;
+      }
+      docs[i] = docs[parent];
+      scores[i] = scores[parent];
+      i = parent;
+    }
+    docs[i] = doc;
+    scores[i] = score;
+  }
+
+  private void downHeap(int i) {
+    final int doc = docs[i];
+    final float score = scores[i];
+    while (true) {
+      int child = (i << 1) + 1;
+      if (child >= size) {
+        break;
+      }
+      int right = child + 1;
+      if (right < size && lessThan(docs[right], scores[right], docs[child], scores[child])) {
+        child = right;
+      }
+      if (lessThan(docs[child], scores[child], doc, score) == false) {
+        break;
+      }
+      docs[i] = docs[child];
+      scores[i] = scores[child];
+      i = child;
+    }
+    docs[i] = doc;
+    scores[i] = score;
   }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_INTERMEDIATE_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_WRITER_THREADS;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IndexType;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+
+/** Tests the binary quantized index, which is written and searched without a GPU. */
+public class TestBinaryQuantizedIndex extends LuceneTestCase {
+
+  private static float[] randomVector(int dims) {
+    float[] v = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      v[i] = random().nextFloat() * 2 - 1;
+    }
+    return v;
+  }
+
+  // Returns a vector of components in [0, 1), whose codes are all ones if not centred
+  private static float[] randomNonNegativeVector(int dims) {
+    float[] v = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      v[i] = random().nextFloat();
+    }
+    return v;
+  }
+
+  public void testHammingScores() throws Exception {
+    int dims = random().nextInt(200) + 1;
+    float[] target = randomVector(dims);
+    float[] vector = target.clone();
+    int flipped = random().nextInt(dims + 1);
+    for (int i = 0; i < flipped; i++) {
+      vector[i] = target[i] > 0 ? -1f : 1f;
+    }
+
+    try (Directory dir = newDirectory()) {
+      long[] code = new long[BinaryQuantizedIndex.numWords(dims)];
+      float[] centroid = new float[dims];
+      try (IndexOutput out = dir.createOutput("codes", IOContext.DEFAULT)) {
+        BinaryQuantizedIndex.writeCentroid(out, centroid);
+        BinaryQuantizedIndex.writeCode(out, target, centroid, code);
+        BinaryQuantizedIndex.writeCode(out, vector, centroid, code);
+      }
+      try (IndexInput in = dir.openInput("codes", IOContext.DEFAULT)) {
+        var scorer = BinaryQuantizedIndex.scorer(in, 2, target);
+        assertEquals(2, scorer.maxOrd());
+        assertEquals(1f, scorer.score(0), 0f);
+        assertEquals(1f - (float) flipped / dims, scorer.score(1), 1e-6f);
+        assertEquals(1, scorer.ordToDoc(1));
+      }
+    }
+  }
+
+  public void testQuantizeAroundCentroid() {
+    int dims = random().nextInt(200) + 1;
+    float[] centroid = randomNonNegativeVector(dims);
+    float[] vector = new float[dims];
+    long[] code = new long[BinaryQuantizedIndex.numWords(dims)];
+    for (int i = 0; i < dims; i++) {
+      vector[i] = i % 3 == 0 ? centroid[i] + 1 : centroid[i];
+    }
+    BinaryQuantizedIndex.quantize(vector, centroid, code);
+    for (int i = 0; i < dims; i++) {
+      boolean bit = (code[i / Long.SIZE] & (1L << (i % Long.SIZE))) != 0;
+      assertEquals("dim " + i, i % 3 == 0, bit);
+    }
+    // bits past the dimensions are not set
+    int lastBits = dims % Long.SIZE;
+    if (lastBits != 0) {
+      assertEquals(0L, code[code.length - 1] >>> lastBits);
+    }
+  }
+
+  public void testSearch() throws Exception {
+    assertSelfRecall(false);
+  }
+
+  public void testSearchNonNegativeVectors() throws Exception {
+    assertSelfRecall(true);
+  }
+
+  // Asserts that most vectors are found as their own nearest neighbour
+  private void assertSelfRecall(boolean nonNegative) throws Exception {
+    int dims = 64;
+    int numDocs = atLeast(1000);
+    float[][] vectors = new float[numDocs][];
+    var format =
+        new CuVSVectorsFormat(
+            DEFAULT_WRITER_THREADS,
+            DEFAULT_INTERMEDIATE_GRAPH_DEGREE,
+            DEFAULT_GRAPH_DEGREE,
+            IndexType.BINARY_QUANTIZED);
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir, newIndexWriterConfig().setCodec(TestUtil.alwaysKnnVectorsFormat(format)))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = nonNegative ? randomNonNegativeVector(dims) : randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+        if (random().nextInt(numDocs / 4) == 0) {
+          w.commit();
+        }
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        // each vector is its own nearest neighbour, with its exact score
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          int target = random().nextInt(numDocs);
+          TopDocs topDocs =
+              r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+          assertEquals(10, topDocs.scoreDocs.length);
+          if (topDocs.scoreDocs[0].doc == target) {
+            assertEquals(1f, topDocs.scoreDocs[0].score, 0f);
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+import static org.apache.lucene.search.DocIdSetIterator.NO_MORE_DOCS;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.apache.lucene.codecs.hnsw.DefaultFlatVectorScorer;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopKnnCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.util.hnsw.HnswGraph;
+import org.apache.lucene.util.hnsw.HnswGraphSearcher;
+import org.apache.lucene.util.hnsw.RandomVectorScorer;
+
+/**
+ * Tests the parsing of synthetic npy serialized CAGRA indices, and the search of their graph on
+ * the CPU, without a GPU.
+ */
+public class TestCagraGraph extends LuceneTestCase {
+
+  private static final int DEGREE = 16;
+  private static final int RING_NEIGHBORS = 2;
+
+  private static float[] randomVector(int dims) {
+    float[] v = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      v[i] = random().nextFloat() * 2 - 1;
+    }
+    return v;
+  }
+
+  // Returns the neighbours of each node: the previous and next nodes, so that the graph is
+  // connected, then the nearest other nodes. The last neighbour of every other node is an invalid
+  // ordinal, as cuVS pads the neighbours of poorly connected nodes with.
+  static int[][] neighbors(float[][] vectors) {
+    int size = vectors.length;
+    int[][] neighbors = new int[size][];
+    for (int node = 0; node < size; node++) {
+      int prev = (node + size - 1) % size;
+      int next = (node + 1) % size;
+      float[] vector = vectors[node];
+      int[] nearest =
+          IntStream.range(0, size)
+              .filter(i -> i != node && i != prev && i != next)
+              .boxed()
+              .sorted(Comparator.comparingDouble(i -> -EUCLIDEAN.compare(vector, vectors[i])))
+              .mapToInt(Integer::intValue)
+              .limit(DEGREE - RING_NEIGHBORS)
+              .toArray();
+      neighbors[node] = new int[DEGREE];
+      neighbors[node][0] = prev;
+      neighbors[node][1] = next;
+      System.arraycopy(nearest, 0, neighbors[node], RING_NEIGHBORS, nearest.length);
+      if (node % 2 == 0) {
+        neighbors[node][DEGREE - 1] = node % 4 == 0 ? -1 : size + node;
+      }
+    }
+    return neighbors;
+  }
+
+  private static void writeNpyHeader(IndexOutput out, String descr, String shape)
+      throws IOException {
+    String dict = "{'descr': '" + descr + "', 'fortran_order': False, 'shape': (" + shape + "), }";
+    // as numpy, pads the header with spaces and a newline to a multiple of 64 bytes
+    int length = 6 + 2 + 2 + dict.length() + 1;
+    dict += " ".repeat((64 - length % 64) % 64) + "\n";
+    out.writeBytes(new byte[] {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'}, 6);
+    out.writeByte((byte) 1);
+    out.writeByte((byte) 0);
+    out.writeShort((short) dict.length());
+    byte[] bytes = dict.getBytes(StandardCharsets.US_ASCII);
+    out.writeBytes(bytes, bytes.length);
+  }
+
+  // Writes a CAGRA index as cuVS serializes it, with scalars of various widths
+  static void writeCagraIndex(IndexOutput out, float[][] vectors, int[][] neighbors)
+      throws IOException {
+    int size = vectors.length;
+    int dims = vectors[0].length;
+    out.writeBytes(new byte[] {'<', 'f', '4', 0}, 4); // the dtype of the dataset
+    writeNpyHeader(out, "<i4", "");
+    out.writeInt(4); // serialization version
+    writeNpyHeader(out, "<u8", "");
+    out.writeLong(size);
+    writeNpyHeader(out, "<u4", "");
+    out.writeInt(dims);
+    writeNpyHeader(out, "<u2", "");
+    out.writeShort((short) DEGREE);
+    writeNpyHeader(out, "|u1", "");
+    out.writeByte((byte) 0); // metric
+
+    writeNpyHeader(out, "<u4", size + ", " + DEGREE);
+    for (int[] nodeNeighbors : neighbors) {
+      for (int neighbor : nodeNeighbors) {
+        out.writeInt(neighbor);
+      }
+    }
+    writeNpyHeader(out, "<f4", size + ", " + dims);
+    for (float[] vector : vectors) {
+      for (float v : vector) {
+        out.writeInt(Float.floatToIntBits(v));
+      }
+    }
+  }
+
+  public void testReadNeighbors() throws Exception {
+    int size = 2 * DEGREE + random().nextInt(100);
+    int dims = 1 + random().nextInt(16);
+    float[][] vectors = new float[size][];
+    for (int i = 0; i < size; i++) {
+      vectors[i] = randomVector(dims);
+    }
+    int[][] neighbors = neighbors(vectors);
+
+    try (Directory dir = newDirectory()) {
+      long offset = random().nextInt(100);
+      try (IndexOutput out = dir.createOutput("cagra", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[(int) offset], (int) offset);
+        writeCagraIndex(out, vectors, neighbors);
+      }
+      try (IndexInput in = dir.openInput("cagra", IOContext.DEFAULT);
+          IndexInput slice = in.slice("cagra index", offset, in.length() - offset)) {
+        CagraGraph cagraGraph = CagraGraph.read(slice);
+        assertEquals(size, cagraGraph.size);
+        assertEquals(dims, cagraGraph.dims);
+        assertEquals(DEGREE, cagraGraph.degree);
+
+        HnswGraph graph = cagraGraph.open(slice);
+        assertEquals(size, graph.size());
+        assertEquals(1, graph.numLevels());
+        assertEquals(DEGREE, graph.maxConn());
+        assertEquals(size / 2, graph.entryNode());
+        for (int node : IntStream.range(0, size).map(i -> random().nextInt(size)).toArray()) {
+          graph.seek(0, node);
+          // the invalid ordinals are skipped, and not counted
+          int[] expected =
+              Arrays.stream(neighbors[node]).filter(n -> n >= 0 && n < size).toArray();
+          assertEquals(expected.length, graph.neighborCount());
+          List<Integer> actual = new ArrayList<>();
+          for (int n = graph.nextNeighbor(); n != NO_MORE_DOCS; n = graph.nextNeighbor()) {
+            actual.add(n);
+          }
+          assertEquals(expected.length, graph.neighborCount());
+          assertArrayEquals(
+              "node " + node, expected, actual.stream().mapToInt(Integer::intValue).toArray());
+        }
+      }
+    }
+  }
+
+  public void testSearch() throws Exception {
+    int size = 200 + random().nextInt(200);
+    int dims = 8;
+    float[][] vectors = new float[size][];
+    for (int i = 0; i < size; i++) {
+      vectors[i] = randomVector(dims);
+    }
+
+    try (Directory dir = newDirectory()) {
+      try (IndexOutput out = dir.createOutput("cagra", IOContext.DEFAULT)) {
+        writeCagraIndex(out, vectors, neighbors(vectors));
+      }
+      try (IndexInput in = dir.openInput("cagra", IOContext.DEFAULT)) {
+        CagraGraph cagraGraph = CagraGraph.read(in);
+        var values = FloatVectorValues.fromFloats(Arrays.asList(vectors), dims);
+        // as the reader, keeps the default number of candidates of searches on the CPU
+        int numCandidates = CuVSVectorsReader.DEFAULT_CPU_ITOPK;
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          float[] target = randomVector(dims);
+          RandomVectorScorer scorer =
+              DefaultFlatVectorScorer.INSTANCE.getRandomVectorScorer(EUCLIDEAN, values, target);
+          // searched as the reader does, with the searcher of Lucene's HNSW graphs
+          TopKnnCollector collector = new TopKnnCollector(numCandidates, Integer.MAX_VALUE);
+          HnswGraphSearcher.search(scorer, collector, cagraGraph.open(in), null);
+          TopDocs topDocs = collector.topDocs();
+          assertEquals(numCandidates, topDocs.scoreDocs.length);
+          for (var scoreDoc : topDocs.scoreDocs) {
+            assertEquals(scorer.score(scoreDoc.doc), scoreDoc.score, 0f);
+          }
+
+          int nearest = 0;
+          for (int ord = 1; ord < size; ord++) {
+            if (scorer.score(ord) > scorer.score(nearest)) {
+              nearest = ord;
+            }
+          }
+          if (topDocs.scoreDocs[0].doc == nearest) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+
+  public void testMismatchedGraphShape() throws Exception {
+    try (Directory dir = newDirectory()) {
+      try (IndexOutput out = dir.createOutput("cagra", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[4], 4);
+        for (int scalar : new int[] {4, 10, 2, DEGREE, 0}) {
+          writeNpyHeader(out, "<u4", "");
+          out.writeInt(scalar);
+        }
+        writeNpyHeader(out, "<u4", "10, " + (DEGREE + 1));
+      }
+      try (IndexInput in = dir.openInput("cagra", IOContext.DEFAULT)) {
+        expectThrows(CorruptIndexException.class, () -> CagraGraph.read(in));
+      }
+    }
+  }
+
+  public void testBigEndianRecord() throws Exception {
+    try (Directory dir = newDirectory()) {
+      try (IndexOutput out = dir.createOutput("cagra", IOContext.DEFAULT)) {
+        out.writeBytes(new byte[4], 4);
+        writeNpyHeader(out, ">u4", "");
+        out.writeInt(4);
+      }
+      try (IndexInput in = dir.openInput("cagra", IOContext.DEFAULT)) {
+        expectThrows(CorruptIndexException.class, () -> CagraGraph.read(in));
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.search.TaskExecutor;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+public class TestChecksums extends LuceneTestCase {
+
+  public void testCombine() {
+    byte[] bytes = new byte[random().nextInt(10_000) + 1];
+    random().nextBytes(bytes);
+    int split = random().nextInt(bytes.length + 1);
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    CRC32 crc1 = new CRC32();
+    crc1.update(bytes, 0, split);
+    CRC32 crc2 = new CRC32();
+    crc2.update(bytes, split, bytes.length - split);
+
+    assertEquals(
+        crc.getValue(), Checksums.combine(crc1.getValue(), crc2.getValue(), bytes.length - split));
+  }
+
+  public void testChecksumEntireFile() throws Exception {
+    byte[] bytes = new byte[atLeast(100_000)];
+    random().nextBytes(bytes);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (Directory dir = newDirectory()) {
+      try (IndexOutput out = dir.createOutput("valid", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+        CodecUtil.writeFooter(out);
+      }
+      long[] boundaries = new long[random().nextInt(10)];
+      for (int i = 0; i < boundaries.length; i++) {
+        boundaries[i] = (i + 1) * (bytes.length / (boundaries.length + 1));
+      }
+      try (IndexInput in = dir.openInput("valid", IOContext.DEFAULT)) {
+        Checksums.checksumEntireFile(in, boundaries, new TaskExecutor(executor));
+      }
+
+      // a footer with a wrong checksum
+      try (IndexOutput out = dir.createOutput("corrupt", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+        out.writeInt(CodecUtil.FOOTER_MAGIC);
+        out.writeInt(0);
+        out.writeLong(out.getChecksum() ^ 1);
+      }
+      try (IndexInput in = dir.openInput("corrupt", IOContext.DEFAULT)) {
+        expectThrows(
+            CorruptIndexException.class,
+            () -> Checksums.checksumEntireFile(in, boundaries, new TaskExecutor(executor)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testDefaultChecksumExecutor() throws Exception {
+    byte[] bytes = new byte[atLeast(100_000)];
+    random().nextBytes(bytes);
+    try (Directory dir = newDirectory()) {
+      try (IndexOutput out = dir.createOutput("file", IOContext.DEFAULT)) {
+        out.writeBytes(bytes, bytes.length);
+        CodecUtil.writeFooter(out);
+      }
+      long[] boundaries = {bytes.length / 3, 2 * (bytes.length / 3)};
+      try (IndexInput in = dir.openInput("file", IOContext.DEFAULT)) {
+        // the default executor checksums without any setting
+        Checksums.checksumEntireFile(
+            in, boundaries, new TaskExecutor(CuVSVectorsFormat.checksumExecutor()));
+      }
+    }
+  }
+}
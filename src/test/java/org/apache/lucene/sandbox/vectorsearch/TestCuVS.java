@@ -16,24 +16,33 @@
 package org.apache.lucene.sandbox.vectorsearch;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.KnnFloatVectorField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.VectorSimilarityFunction;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.KnnFloatVectorQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.tests.analysis.MockAnalyzer;
 import org.apache.lucene.tests.analysis.MockTokenizer;
@@ -42,6 +51,7 @@ import org.apache.lucene.tests.util.English;
 import org.apache.lucene.tests.util.LuceneTestCase;
 import org.apache.lucene.tests.util.LuceneTestCase.SuppressSysoutChecks;
 import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.BytesRef;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -147,6 +157,102 @@ public class TestCuVS extends LuceneTestCase {
     }
   }
 
+  @Test
+  public void testFilteredVectorSearch() throws IOException {
+    Random random = random();
+    int topK = Math.min(random.nextInt(TOP_K_LIMIT) + 1, dataset.length);
+    int numAccepted = random.nextInt(dataset.length) + 1;
+    assertFilteredSearch(searcher, random, topK, numAccepted);
+  }
+
+  @Test
+  public void testSelectiveFilteredVectorSearch() throws IOException {
+    Random random = random();
+    int topK = Math.min(random.nextInt(TOP_K_LIMIT) + 1, dataset.length);
+    // fewer accepted documents than topK, which are then all found
+    int numAccepted = random.nextInt(topK) + 1;
+    assertFilteredSearch(searcher, random, topK, numAccepted);
+  }
+
+  // Concurrent searches, with and without filters, of a reader that coalesces searches
+  @Test
+  public void testCoalescedFilteredVectorSearch() throws Exception {
+    CuVSVectorsFormat.setQueryCoalescing(Duration.ofMillis(10), 8);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (IndexReader coalescingReader = DirectoryReader.open(directory)) {
+      IndexSearcher coalescingSearcher = new IndexSearcher(coalescingReader);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        Random random = new Random(random().nextLong());
+        boolean filtered = i % 2 == 0;
+        futures.add(
+            executor.submit(
+                () -> {
+                  int topK = Math.min(random.nextInt(TOP_K_LIMIT) + 1, dataset.length);
+                  int numAccepted = filtered ? random.nextInt(dataset.length) + 1 : dataset.length;
+                  assertFilteredSearch(coalescingSearcher, random, topK, numAccepted);
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+      CuVSVectorsFormat.setQueryCoalescing(
+          Duration.ZERO, CuVSVectorsFormat.DEFAULT_COALESCE_MAX_BATCH_SIZE);
+    }
+  }
+
+  // Searches the topK nearest vectors of a random query, among the given number of random
+  // documents, or all of them without a filter, and checks that min(topK, numAccepted) of the
+  // accepted documents are found
+  private static void assertFilteredSearch(
+      IndexSearcher searcher, Random random, int topK, int numAccepted) throws IOException {
+    float[] query = generateQueries(random, dataset[0].length, 1)[0];
+    Set<String> acceptedIds = new HashSet<>();
+    while (acceptedIds.size() < numAccepted) {
+      acceptedIds.add(String.valueOf(random.nextInt(dataset.length)));
+    }
+    List<BytesRef> terms = acceptedIds.stream().map(BytesRef::new).toList();
+    Query filter = numAccepted < dataset.length ? new TermInSetQuery("id", terms) : null;
+
+    ScoreDoc[] hits =
+        searcher.search(new KnnFloatVectorQuery("vector", query, topK, filter), topK).scoreDocs;
+    assertEquals(Math.min(topK, numAccepted), hits.length);
+    Set<String> hitIds = new HashSet<>();
+    for (ScoreDoc hit : hits) {
+      String id = searcher.getIndexReader().storedFields().document(hit.doc).get("id");
+      assertTrue("Result returned was not accepted by the filter: " + id, acceptedIds.contains(id));
+      assertTrue("Result returned twice: " + id, hitIds.add(id));
+    }
+    if (numAccepted <= topK) {
+      assertEquals(acceptedIds, hitIds);
+    }
+  }
+
+  @Test
+  public void testMultiVectorSearch() throws IOException {
+    Random random = random();
+    int numQueries = random.nextInt(NUM_QUERIES_LIMIT) + 1;
+    int topK = Math.min(random.nextInt(TOP_K_LIMIT) + 1, dataset.length);
+
+    float[][] queries = generateQueries(random, dataset[0].length, numQueries);
+    List<List<Integer>> expected = generateExpectedResults(topK, dataset, queries);
+
+    var query = new CuVSKnnFloatMultiVectorQuery("vector", queries, topK);
+    TopDocs[] results = query.searchAll(searcher);
+    assertEquals(numQueries, results.length);
+
+    for (int i = 0; i < numQueries; i++) {
+      assertTrue(results[i].scoreDocs.length <= topK);
+      for (ScoreDoc hit : results[i].scoreDocs) {
+        int doc = Integer.parseInt(reader.storedFields().document(hit.doc).get("id"));
+        assertTrue("Result returned was not in topk*3: " + doc, expected.get(i).contains(doc));
+      }
+    }
+  }
+
   private static float[][] generateQueries(Random random, int dimensions, int numQueries) {
     // Generate random query vectors
     float[][] queries = new float[numQueries][dimensions];
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSBuildScheduler.Priority.FLUSH;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSBuildScheduler.Priority.MERGE;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/** Tests the build scheduler with fake builds, that do not require a GPU. */
+public class TestCuVSBuildScheduler extends LuceneTestCase {
+
+  private ExecutorService executor;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    super.tearDown();
+  }
+
+  // Submits a fake build, that runs until the given latch is released
+  private Future<?> submitBuild(
+      CuVSBuildScheduler scheduler,
+      CuVSBuildScheduler.Priority priority,
+      long bytes,
+      CountDownLatch release,
+      List<String> started,
+      String name) {
+    return executor.submit(
+        () ->
+            scheduler.run(
+                priority,
+                bytes,
+                () -> {
+                  started.add(name);
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    throw new ThreadInterruptedException(e);
+                  }
+                  return null;
+                }));
+  }
+
+  private static void awaitQueueDepth(CuVSBuildScheduler scheduler, int depth) throws Exception {
+    while (scheduler.queueDepth() != depth) {
+      Thread.sleep(1);
+    }
+  }
+
+  public void testMemoryAdmission() throws Exception {
+    CuVSBuildScheduler scheduler = new CuVSBuildScheduler(100, 10);
+    List<String> started = new CopyOnWriteArrayList<>();
+    CountDownLatch release1 = new CountDownLatch(1);
+    CountDownLatch release2 = new CountDownLatch(1);
+
+    Future<?> build1 = submitBuild(scheduler, FLUSH, 60, release1, started, "1");
+    while (scheduler.activeBuilds() != 1) {
+      Thread.sleep(1);
+    }
+    assertEquals(60, scheduler.reservedBytes());
+
+    // does not fit in the budget until the first build completes
+    Future<?> build2 = submitBuild(scheduler, FLUSH, 60, release2, started, "2");
+    awaitQueueDepth(scheduler, 1);
+    assertEquals(List.of("1"), started);
+
+    release1.countDown();
+    build1.get();
+    awaitQueueDepth(scheduler, 0);
+    release2.countDown();
+    build2.get();
+    assertEquals(List.of("1", "2"), started);
+    assertEquals(2, scheduler.admittedBuilds());
+    assertEquals(0, scheduler.activeBuilds());
+    assertEquals(0, scheduler.reservedBytes());
+    assertTrue(scheduler.maxWaitNanos() > 0);
+    assertTrue(scheduler.totalWaitNanos() >= scheduler.maxWaitNanos());
+  }
+
+  public void testFlushesBeforeMerges() throws Exception {
+    CuVSBuildScheduler scheduler = new CuVSBuildScheduler(Long.MAX_VALUE, 1);
+    List<String> started = new CopyOnWriteArrayList<>();
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<?> running = submitBuild(scheduler, MERGE, 1, release, started, "running");
+    while (scheduler.activeBuilds() != 1) {
+      Thread.sleep(1);
+    }
+    Future<?> merge = submitBuild(scheduler, MERGE, 1, release, started, "merge");
+    awaitQueueDepth(scheduler, 1);
+    Future<?> flush = submitBuild(scheduler, FLUSH, 1, release, started, "flush");
+    awaitQueueDepth(scheduler, 2);
+
+    release.countDown();
+    running.get();
+    merge.get();
+    flush.get();
+    assertEquals(List.of("running", "flush", "merge"), started);
+  }
+
+  public void testBuildLargerThanTheBudget() throws Exception {
+    CuVSBuildScheduler scheduler = new CuVSBuildScheduler(100, 10);
+    assertEquals("built", scheduler.run(MERGE, 1000, () -> "built"));
+    assertEquals(0, scheduler.reservedBytes());
+  }
+
+  public void testUnbounded() throws Exception {
+    CuVSBuildScheduler scheduler = CuVSBuildScheduler.unbounded();
+    List<String> started = new CopyOnWriteArrayList<>();
+    CountDownLatch release = new CountDownLatch(1);
+    int numBuilds = 10;
+    Future<?>[] builds = new Future<?>[numBuilds];
+    for (int i = 0; i < numBuilds; i++) {
+      builds[i] = submitBuild(scheduler, FLUSH, 1L << 40, release, started, "" + i);
+    }
+    while (scheduler.activeBuilds() != numBuilds) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, scheduler.queueDepth());
+    release.countDown();
+    for (Future<?> build : builds) {
+      build.get();
+    }
+  }
+
+  public void testEstimatesOfLargeSegments() {
+    int size = Integer.MAX_VALUE;
+    long bytesPerVector = 128L * Float.BYTES + 64L * Integer.BYTES;
+    assertEquals(
+        size * (bytesPerVector + 128L * Integer.BYTES),
+        CuVSBuildScheduler.estimateBuildBytes(size, 128, 128, 64));
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_CODEC_NAME;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_EXT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_EXT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_NAME;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.VERSION_CURRENT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.hnsw.DefaultFlatVectorScorer;
+import org.apache.lucene.codecs.lucene99.Lucene99FlatVectorsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.KnnByteVectorField;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopKnnCollector;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+import org.junit.BeforeClass;
+
+/**
+ * Tests that segments are written, merged and searched exactly, without a GPU, and that CAGRA
+ * graphs are searched on the CPU.
+ */
+public class TestCuVSCpuFallback extends LuceneTestCase {
+
+  @BeforeClass
+  public static void beforeClass() {
+    assumeFalse("cuvs is supported, the GPU is used", CuVSVectorsFormat.supported());
+  }
+
+  private static float[] randomVector(int dims) {
+    float[] v = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      v[i] = random().nextFloat();
+    }
+    return v;
+  }
+
+  public void testExactSearch() throws Exception {
+    doTestExactSearch();
+  }
+
+  public void testExactSearchWithExecutor() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      CuVSVectorsFormat.setCpuSearchExecutor(executor);
+      doTestExactSearch();
+    } finally {
+      CuVSVectorsFormat.setCpuSearchExecutor(null);
+      executor.shutdown();
+    }
+  }
+
+  public void testExactSearchBytes() throws Exception {
+    int dims = 16;
+    int numDocs = atLeast(1000);
+    int k = random().nextInt(20) + 1;
+    byte[][] vectors = new byte[numDocs][];
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir,
+                newIndexWriterConfig()
+                    .setCodec(TestUtil.alwaysKnnVectorsFormat(new CuVSVectorsFormat())))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomByteVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnByteVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+        if (random().nextInt(numDocs / 4) == 0) {
+          w.commit();
+        }
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        assertArrayEquals(vectors[0], r.getByteVectorValues("f").vectorValue(0));
+        byte[] target = randomByteVector(dims);
+        TopDocs topDocs = r.searchNearestVectors("f", target, k, null, Integer.MAX_VALUE);
+
+        ScoreDoc[] expected = new ScoreDoc[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+          expected[i] = new ScoreDoc(i, EUCLIDEAN.compare(target, vectors[i]));
+        }
+        Arrays.sort(
+            expected,
+            Comparator.comparingDouble((ScoreDoc sd) -> -sd.score).thenComparingInt(sd -> sd.doc));
+        assertEquals(k, topDocs.scoreDocs.length);
+        for (int i = 0; i < k; i++) {
+          // equal scores may be collected in any order
+          assertEquals(expected[i].score, topDocs.scoreDocs[i].score, 0f);
+        }
+      }
+    }
+  }
+
+  // Searches the CAGRA graph of a field that some docs have no vector for, so that the ordinals of
+  // the graph are not the doc ids. The segment is written without a GPU, with the raw vectors
+  // only, and its cuVS files are replaced by those of a synthetic CAGRA index.
+  public void testGraphSearchSparseField() throws Exception {
+    int dims = 8;
+    int numDocs = 300 + random().nextInt(300);
+    int k = random().nextInt(10) + 1;
+    float[][] vectorsByDoc = new float[numDocs][];
+    List<float[]> vectors = new ArrayList<>(); // by ordinal
+    try (Directory dir = new ByteBuffersDirectory()) {
+      IndexWriterConfig iwc =
+          new IndexWriterConfig()
+              .setCodec(TestUtil.alwaysKnnVectorsFormat(new CuVSVectorsFormat()))
+              .setUseCompoundFile(false);
+      try (IndexWriter w = new IndexWriter(dir, iwc)) {
+        for (int i = 0; i < numDocs; i++) {
+          Document doc = new Document();
+          doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+          if (i % 3 != 0) {
+            vectorsByDoc[i] = randomVector(dims);
+            vectors.add(vectorsByDoc[i]);
+            doc.add(new KnnFloatVectorField("f", vectorsByDoc[i], EUCLIDEAN));
+          }
+          w.addDocument(doc);
+        }
+        w.commit();
+      }
+
+      SegmentInfo segmentInfo = SegmentInfos.readLatestCommit(dir).info(0).info;
+      FieldInfos fieldInfos;
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        fieldInfos = getOnlyLeafReader(reader).getFieldInfos();
+      }
+      String metaFileName =
+          segmentInfo.files().stream()
+              .filter(name -> name.endsWith("." + CUVS_META_CODEC_EXT))
+              .findFirst()
+              .orElseThrow();
+      String suffix =
+          metaFileName.substring(
+              segmentInfo.name.length() + 1,
+              metaFileName.length() - CUVS_META_CODEC_EXT.length() - 1);
+      String indexFileName =
+          IndexFileNames.segmentFileName(segmentInfo.name, suffix, CUVS_INDEX_EXT);
+      dir.deleteFile(metaFileName);
+      dir.deleteFile(indexFileName);
+
+      float[][] graphVectors = vectors.toArray(new float[0][]);
+      long offset;
+      long length;
+      try (IndexOutput out = dir.createOutput(indexFileName, IOContext.DEFAULT)) {
+        CodecUtil.writeIndexHeader(
+            out, CUVS_INDEX_CODEC_NAME, VERSION_CURRENT, segmentInfo.getId(), suffix);
+        offset = out.getFilePointer();
+        TestCagraGraph.writeCagraIndex(out, graphVectors, TestCagraGraph.neighbors(graphVectors));
+        length = out.getFilePointer() - offset;
+        CodecUtil.writeFooter(out);
+      }
+      FieldInfo fieldInfo = fieldInfos.fieldInfo("f");
+      try (IndexOutput out = dir.createOutput(metaFileName, IOContext.DEFAULT)) {
+        CodecUtil.writeIndexHeader(
+            out, CUVS_META_CODEC_NAME, VERSION_CURRENT, segmentInfo.getId(), suffix);
+        out.writeInt(fieldInfo.number);
+        out.writeInt(fieldInfo.getVectorEncoding().ordinal());
+        out.writeInt(CuVSVectorsWriter.distFuncToOrd(fieldInfo.getVectorSimilarityFunction()));
+        CuVSVectorsReader.FieldEntry.of(fieldInfo, graphVectors.length)
+            .withGpuIndices(offset, length, 0L, 0L, 0L, 0L, false)
+            .writeEntry(out);
+        out.writeInt(-1);
+        CodecUtil.writeFooter(out);
+      }
+
+      var state = new SegmentReadState(dir, segmentInfo, fieldInfos, IOContext.DEFAULT, suffix);
+      var flatFormat = new Lucene99FlatVectorsFormat(DefaultFlatVectorScorer.INSTANCE);
+      try (var reader = new CuVSVectorsReader(state, null, flatFormat.fieldsReader(state))) {
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          float[] target = randomVector(dims);
+          TopKnnCollector collector = new TopKnnCollector(k, Integer.MAX_VALUE);
+          reader.search("f", target, collector, null);
+          TopDocs topDocs = collector.topDocs();
+          assertEquals(k, topDocs.scoreDocs.length);
+          for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            float[] vector = vectorsByDoc[scoreDoc.doc];
+            assertNotNull("doc " + scoreDoc.doc + " has no vector", vector);
+            assertEquals(EUCLIDEAN.compare(target, vector), scoreDoc.score, 1e-5f);
+          }
+
+          int nearest = -1;
+          for (int doc = 0; doc < numDocs; doc++) {
+            if (vectorsByDoc[doc] != null
+                && (nearest == -1
+                    || EUCLIDEAN.compare(target, vectorsByDoc[doc])
+                        > EUCLIDEAN.compare(target, vectorsByDoc[nearest]))) {
+              nearest = doc;
+            }
+          }
+          if (topDocs.scoreDocs[0].doc == nearest) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+
+  private static byte[] randomByteVector(int dims) {
+    byte[] v = new byte[dims];
+    random().nextBytes(v);
+    return v;
+  }
+
+  private void doTestExactSearch() throws Exception {
+    int dims = 16;
+    int numDocs = atLeast(CuVSVectorsReader.MIN_EXACT_SEARCH_SLICE_SIZE * 2 / 100) * 100;
+    int k = random().nextInt(20) + 1;
+    float[][] vectors = new float[numDocs][];
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir,
+                newIndexWriterConfig()
+                    .setCodec(TestUtil.alwaysKnnVectorsFormat(new CuVSVectorsFormat())))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+        if (random().nextInt(numDocs / 4) == 0) {
+          w.commit();
+        }
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        float[] target = randomVector(dims);
+        TopDocs topDocs = r.searchNearestVectors("f", target, k, null, Integer.MAX_VALUE);
+
+        ScoreDoc[] expected = new ScoreDoc[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+          expected[i] = new ScoreDoc(i, EUCLIDEAN.compare(target, vectors[i]));
+        }
+        Arrays.sort(
+            expected,
+            Comparator.comparingDouble((ScoreDoc sd) -> -sd.score).thenComparingInt(sd -> sd.doc));
+        assertEquals(k, topDocs.scoreDocs.length);
+        for (int i = 0; i < k; i++) {
+          assertEquals(expected[i].doc, topDocs.scoreDocs[i].doc);
+          assertEquals(expected[i].score, topDocs.scoreDocs[i].score, 1e-5f);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+public class TestCuVSIndexCache extends LuceneTestCase {
+
+  // Indices without any native index, so that the cache can be exercised without a GPU
+  static LazyCuVSIndex.Loader countingLoader(AtomicInteger loads) {
+    return () -> {
+      loads.incrementAndGet();
+      return new CuVSIndex(null, null, null);
+    };
+  }
+
+  static void assertClosed(CuVSIndex index) {
+    expectThrows(IllegalStateException.class, index::getCagraIndex);
+  }
+
+  public void testHitAndMiss() throws IOException {
+    var cache = new CuVSIndexCache(100);
+    Object owner = new Object();
+    AtomicInteger loads = new AtomicInteger();
+    CuVSIndex first;
+    try (var handle = cache.acquire(owner, 0, 10, countingLoader(loads))) {
+      first = handle.index();
+    }
+    try (var handle = cache.acquire(owner, 0, 10, countingLoader(loads))) {
+      assertSame(first, handle.index());
+    }
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.missCount());
+    assertEquals(1, cache.hitCount());
+    assertEquals(0, cache.evictionCount());
+    assertEquals(10, cache.bytesUsed());
+
+    cache.invalidate(owner);
+    assertEquals(0, cache.bytesUsed());
+    assertClosed(first);
+  }
+
+  public void testEvictsLeastRecentlyUsed() throws IOException {
+    var cache = new CuVSIndexCache(25);
+    Object owner = new Object();
+    AtomicInteger loads = new AtomicInteger();
+    CuVSIndex[] indices = new CuVSIndex[3];
+    for (int field = 0; field < 2; field++) {
+      try (var handle = cache.acquire(owner, field, 10, countingLoader(loads))) {
+        indices[field] = handle.index();
+      }
+    }
+    // field 0 is now more recently used than field 1
+    cache.acquire(owner, 0, 10, countingLoader(loads)).close();
+    try (var handle = cache.acquire(owner, 2, 10, countingLoader(loads))) {
+      indices[2] = handle.index();
+    }
+    assertEquals(1, cache.evictionCount());
+    assertEquals(20, cache.bytesUsed());
+    assertClosed(indices[1]);
+    assertNull(indices[0].getCagraIndex()); // still open
+
+    // the evicted index is loaded again
+    try (var handle = cache.acquire(owner, 1, 10, countingLoader(loads))) {
+      assertNotSame(indices[1], handle.index());
+    }
+    assertEquals(4, loads.get());
+    assertEquals(2, cache.evictionCount());
+    cache.invalidate(owner);
+  }
+
+  public void testIndicesInUseAreNotEvicted() throws IOException {
+    var cache = new CuVSIndexCache(10);
+    Object owner = new Object();
+    AtomicInteger loads = new AtomicInteger();
+    var first = cache.acquire(owner, 0, 10, countingLoader(loads));
+    try (var second = cache.acquire(owner, 1, 10, countingLoader(loads))) {
+      // over budget, but both indices are in use
+      assertEquals(20, cache.bytesUsed());
+      assertEquals(0, cache.evictionCount());
+      first.close();
+      // the first index is evicted as soon as it is released
+      assertEquals(1, cache.evictionCount());
+      assertClosed(first.index());
+      assertEquals(10, cache.bytesUsed());
+      assertNull(second.index().getCagraIndex());
+    }
+    cache.invalidate(owner);
+  }
+
+  public void testInvalidateWhileInUse() throws IOException {
+    var cache = new CuVSIndexCache(100);
+    Object owner = new Object();
+    var handle = cache.acquire(owner, 0, 10, countingLoader(new AtomicInteger()));
+    cache.invalidate(owner);
+    assertEquals(0, cache.bytesUsed());
+    // still usable until released
+    assertNull(handle.index().getCagraIndex());
+    handle.close();
+    assertClosed(handle.index());
+  }
+
+  public void testFailedLoad() throws IOException {
+    var cache = new CuVSIndexCache(100);
+    Object owner = new Object();
+    expectThrows(
+        IOException.class,
+        () ->
+            cache.acquire(
+                owner,
+                0,
+                10,
+                () -> {
+                  throw new IOException("boom");
+                }));
+    assertEquals(0, cache.bytesUsed());
+    AtomicInteger loads = new AtomicInteger();
+    cache.acquire(owner, 0, 10, countingLoader(loads)).close();
+    assertEquals(1, loads.get());
+    cache.invalidate(owner);
+  }
+}
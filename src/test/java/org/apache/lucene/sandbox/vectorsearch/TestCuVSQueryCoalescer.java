@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+public class TestCuVSQueryCoalescer extends LuceneTestCase {
+
+  // A stand-in for the GPU search, that returns the first component of each query
+  static List<Float> firstComponents(float[][] queries) {
+    List<Float> results = new ArrayList<>(queries.length);
+    for (float[] query : queries) {
+      results.add(query[0]);
+    }
+    return results;
+  }
+
+  public void testNoCoalescing() throws IOException {
+    AtomicInteger calls = new AtomicInteger();
+    var coalescer =
+        new CuVSQueryCoalescer<Float>(
+            (queries, topK) -> {
+              calls.incrementAndGet();
+              assertEquals(1, queries.length);
+              return firstComponents(queries);
+            },
+            0L,
+            16);
+    assertEquals(3f, coalescer.search(new float[] {3f}, 10), 0f);
+    assertEquals(5f, coalescer.search(new float[] {5f}, 10), 0f);
+    assertEquals(2, calls.get());
+  }
+
+  public void testFullBatch() throws Exception {
+    final int numThreads = 4;
+    AtomicInteger calls = new AtomicInteger();
+    AtomicInteger maxTopK = new AtomicInteger();
+    var coalescer =
+        new CuVSQueryCoalescer<Float>(
+            (queries, topK) -> {
+              calls.incrementAndGet();
+              maxTopK.set(topK);
+              assertEquals(numThreads, queries.length);
+              return firstComponents(queries);
+            },
+            TimeUnit.MINUTES.toNanos(1),
+            numThreads);
+
+    CountDownLatch start = new CountDownLatch(1);
+    float[] results = new float[numThreads];
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      final int id = i;
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                  results[id] = coalescer.search(new float[] {id}, id + 1);
+                } catch (Exception e) {
+                  throw new AssertionError(e);
+                }
+              });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // the window is long, so the batch can only have been issued because it was full
+    assertEquals(1, calls.get());
+    assertEquals(numThreads, maxTopK.get());
+    for (int i = 0; i < numThreads; i++) {
+      assertEquals(i, results[i], 0f);
+    }
+  }
+
+  public void testWindowElapses() throws IOException {
+    AtomicInteger calls = new AtomicInteger();
+    var coalescer =
+        new CuVSQueryCoalescer<Float>(
+            (queries, topK) -> {
+              calls.incrementAndGet();
+              return firstComponents(queries);
+            },
+            TimeUnit.MILLISECONDS.toNanos(1),
+            1024);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, coalescer.search(new float[] {i}, 10), 0f);
+    }
+    assertEquals(10, calls.get());
+  }
+
+  public void testFailureIsPropagated() {
+    var coalescer =
+        new CuVSQueryCoalescer<Float>(
+            (queries, topK) -> {
+              throw new IOException("boom");
+            },
+            TimeUnit.MILLISECONDS.toNanos(1),
+            8);
+    IOException e = expectThrows(IOException.class, () -> coalescer.search(new float[] {1f}, 1));
+    assertEquals("boom", e.getMessage());
+  }
+
+  public void testIllegalArguments() {
+    expectThrows(
+        IllegalArgumentException.class,
+        () -> new CuVSQueryCoalescer<Float>((q, k) -> firstComponents(q), -1L, 8));
+    expectThrows(
+        IllegalArgumentException.class,
+        () -> new CuVSQueryCoalescer<Float>((q, k) -> firstComponents(q), 10L, 0));
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.CuVSResourcesPool.Placement.LEAST_LOADED;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSResourcesPool.Placement.ROUND_ROBIN;
+
+import com.nvidia.cuvs.CagraIndex;
+import com.nvidia.cuvs.CuVSResources;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+/** Tests the placement and leases of the resources pool, with empty slots, without a GPU. */
+public class TestCuVSResourcesPool extends LuceneTestCase {
+
+  public void testPlaceRoundRobin() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[3], ROUND_ROBIN);
+    for (int i = 0; i < 7; i++) {
+      assertEquals(i % 3, pool.placeIndex());
+    }
+    assertEquals(3, pool.placedIndices(0));
+    assertEquals(2, pool.placedIndices(1));
+    assertEquals(2, pool.placedIndices(2));
+  }
+
+  public void testPlaceLeastLoaded() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[3], LEAST_LOADED);
+    assertEquals(0, pool.placeIndex());
+    assertEquals(1, pool.placeIndex());
+    assertEquals(2, pool.placeIndex());
+
+    // the slot of the removed index is the only one of the fewest indices
+    pool.removeIndex(1);
+    assertEquals(1, pool.placeIndex());
+    pool.removeIndex(0);
+    pool.removeIndex(2);
+    assertEquals(2, pool.placeIndex());
+    assertEquals(0, pool.placeIndex());
+  }
+
+  public void testAcquireLeastLoaded() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[3], LEAST_LOADED);
+    pool.placeIndex();
+    pool.placeIndex();
+    pool.placeIndex();
+    pool.removeIndex(2);
+    try (var lease = pool.acquire()) {
+      assertEquals(2, lease.slot());
+      // the least loaded slot is leased, the next least loaded free one is picked
+      try (var other = pool.acquire()) {
+        assertTrue(other.slot() != 2);
+      }
+    }
+  }
+
+  // Tasks, e.g. builds, keep off the slots of the indices searched by readers
+  public void testAcquireKeepsOffPlacedSlots() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[3], ROUND_ROBIN);
+    assertEquals(0, pool.placeIndex());
+    assertEquals(1, pool.placeIndex());
+    assertEquals(2, pool.placeIndex());
+    assertEquals(0, pool.placeIndex());
+    pool.removeIndex(2);
+    for (int i = 0; i < 5; i++) {
+      try (var lease = pool.acquire()) {
+        assertEquals(2, lease.slot());
+        // then the free slot of the fewest placed indices
+        try (var other = pool.acquire()) {
+          assertEquals(1, other.slot());
+        }
+      }
+    }
+  }
+
+  public void testLeasesAreExclusive() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[3], ROUND_ROBIN);
+    var lease0 = pool.acquire();
+    var lease1 = pool.acquire();
+    var lease2 = pool.acquire();
+    assertEquals(0, lease0.slot());
+    assertEquals(1, lease1.slot());
+    assertEquals(2, lease2.slot());
+    assertTrue(pool.isLeased(1));
+
+    // only the released slot is free
+    lease1.close();
+    assertFalse(pool.isLeased(1));
+    var lease = pool.acquire();
+    assertEquals(1, lease.slot());
+    lease.close();
+    lease0.close();
+    lease2.close();
+  }
+
+  public void testCloseLeaseOnce() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[2], ROUND_ROBIN);
+    var lease = pool.acquire();
+    lease.close();
+    var other = pool.acquire(lease.slot());
+    // closing the lease again does not release the slot leased by the other lease
+    lease.close();
+    assertTrue(pool.isLeased(lease.slot()));
+    other.close();
+    assertFalse(pool.isLeased(lease.slot()));
+  }
+
+  public void testClosedLease() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[2], ROUND_ROBIN);
+    var lease = pool.acquire();
+    lease.resources();
+    lease.close();
+    expectThrows(IllegalStateException.class, lease::resources);
+  }
+
+  public void testCloseWhileInUse() throws Exception {
+    AtomicInteger closes = new AtomicInteger();
+    CuVSResources[] resources = {countingResources(closes), countingResources(closes)};
+    CuVSResourcesPool pool = new CuVSResourcesPool(resources, ROUND_ROBIN);
+    var lease = pool.acquire();
+    expectThrows(IllegalStateException.class, pool::close);
+    lease.close();
+    int slot = pool.placeIndex();
+    expectThrows(IllegalStateException.class, pool::close);
+    assertEquals(0, closes.get());
+
+    // the pool is still open
+    try (var other = pool.acquire(slot)) {
+      assertSame(resources[slot], other.resources());
+    }
+    pool.removeIndex(slot);
+    pool.close();
+    assertEquals(2, closes.get());
+    expectThrows(IllegalStateException.class, pool::acquire);
+    expectThrows(IllegalStateException.class, () -> pool.acquire(0));
+    expectThrows(IllegalStateException.class, pool::placeIndex);
+    for (int s = 0; s < pool.size(); s++) {
+      assertFalse(pool.isLeased(s));
+      assertEquals(0, pool.placedIndices(s));
+    }
+    // closing again is a no-op
+    pool.close();
+    assertEquals(2, closes.get());
+  }
+
+  // Returns resources without any native resources, that count their closes
+  private static CuVSResources countingResources(AtomicInteger closes) {
+    return (CuVSResources)
+        Proxy.newProxyInstance(
+            CuVSResources.class.getClassLoader(),
+            new Class<?>[] {CuVSResources.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("close")) {
+                closes.incrementAndGet();
+              }
+              return null;
+            });
+  }
+
+  // The indices loaded before one fails to load are destroyed under the lease, and removed from
+  // the slot
+  public void testFailedLoad() {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[2], ROUND_ROBIN);
+    pool.placeIndex();
+    int slot = 1;
+    List<Boolean> destroyedUnderLease = new ArrayList<>();
+    CagraIndex cagraIndex =
+        (CagraIndex)
+            Proxy.newProxyInstance(
+                CagraIndex.class.getClassLoader(),
+                new Class<?>[] {CagraIndex.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("destroyIndex")) {
+                    destroyedUnderLease.add(pool.isLeased(slot));
+                  }
+                  return null;
+                });
+    var e =
+        expectThrows(
+            IllegalStateException.class,
+            () ->
+                CuVSIndex.load(
+                    null,
+                    pool,
+                    r -> cagraIndex,
+                    r -> {
+                      throw new IllegalStateException("bf index failed to load");
+                    },
+                    r -> {
+                      throw new AssertionError("loaded after a failure");
+                    }));
+    assertEquals("bf index failed to load", e.getMessage());
+    assertEquals(List.of(true), destroyedUnderLease);
+    assertFalse(pool.isLeased(slot));
+    assertEquals(0, pool.placedIndices(slot));
+    assertEquals(1, pool.placedIndices(0));
+  }
+
+  public void testAcquireWaitsForRelease() throws Exception {
+    CuVSResourcesPool pool = new CuVSResourcesPool(new CuVSResources[2], ROUND_ROBIN);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      var lease0 = pool.acquire(0);
+      var lease1 = pool.acquire(1);
+      Future<Integer> anySlot =
+          executor.submit(
+              () -> {
+                try (var lease = pool.acquire()) {
+                  return lease.slot();
+                }
+              });
+      Future<Integer> slot0 =
+          executor.submit(
+              () -> {
+                try (var lease = pool.acquire(0)) {
+                  return lease.slot();
+                }
+              });
+      Thread.sleep(10);
+      assertFalse(anySlot.isDone());
+      assertFalse(slot0.isDone());
+
+      lease1.close();
+      assertEquals(1, (int) anySlot.get());
+      assertFalse(slot0.isDone());
+      lease0.close();
+      assertEquals(0, (int) slot0.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testConcurrentLeasesNeverShareASlot() throws Exception {
+    int size = 1 + random().nextInt(4);
+    int numThreads = size + 1 + random().nextInt(4);
+    CuVSResourcesPool pool =
+        new CuVSResourcesPool(
+            new CuVSResources[size], random().nextBoolean() ? ROUND_ROBIN : LEAST_LOADED);
+    AtomicIntegerArray holders = new AtomicIntegerArray(size);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        Random random = new Random(random().nextLong());
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < 1000; i++) {
+                    try (var lease = random.nextBoolean() ? pool.acquire() : pool.acquire(0)) {
+                      assertEquals(1, holders.incrementAndGet(lease.slot()));
+                      Thread.yield();
+                      assertEquals(0, holders.decrementAndGet(lease.slot()));
+                    }
+                  }
+                  return null;
+                }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    for (int slot = 0; slot < size; slot++) {
+      assertFalse(pool.isLeased(slot));
+    }
+  }
+
+  public void testEmptyPool() {
+    expectThrows(
+        IllegalArgumentException.class,
+        () -> new CuVSResourcesPool(new CuVSResources[0], ROUND_ROBIN));
+  }
+}
@@ -16,22 +16,56 @@
 package org.apache.lucene.sandbox.vectorsearch;
 
 import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_INDEX_EXT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.CUVS_META_CODEC_EXT;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.CUVS_COMPONENT;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.perfield.PerFieldKnnVectorsFormat;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.KnnFloatVectorField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.CodecReader;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IndexType;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IvfPqParams;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FilterDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.tests.index.BaseKnnVectorsFormatTestCase;
+import org.apache.lucene.tests.store.BaseDirectoryWrapper;
 import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.ThreadInterruptedException;
+import org.apache.lucene.util.VectorUtil;
 import org.junit.BeforeClass;
 
 public class TestCuVSVectorsFormat extends BaseKnnVectorsFormatTestCase {
@@ -127,4 +161,626 @@ public class TestCuVSVectorsFormat extends BaseKnnVectorsFormatTestCase {
       }
     }
   }
+
+  public void testToString() {
+    var format =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.IVF_PQ)
+            .withIvfPqParams(new IvfPqParams(64, 8, 16, 8))
+            .withCompressedDataset(true)
+            .build();
+    String string = format.toString();
+    assertTrue(string, string.contains("indexType=IVF_PQ"));
+    assertTrue(string, string.contains("ivfPqParams=" + new IvfPqParams(64, 8, 16, 8)));
+    assertTrue(string, string.contains("compressDataset=true"));
+    // differently configured formats are told apart
+    assertNotEquals(string, new CuVSVectorsFormat().toString());
+  }
+
+  // The PQ compressed index is refined against the raw vectors, so hits have exact scores
+  public void testIvfPqIndex() throws Exception {
+    int dims = 64;
+    int numDocs = atLeast(2000);
+    float[][] vectors = new float[numDocs][];
+    var format =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.IVF_PQ)
+            .withIvfPqParams(new IvfPqParams(64, 8, 16, 8))
+            .build();
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir, newIndexWriterConfig().setCodec(TestUtil.alwaysKnnVectorsFormat(format)))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          int target = random().nextInt(numDocs);
+          var topDocs = r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+          for (var scoreDoc : topDocs.scoreDocs) {
+            assertEquals(
+                EUCLIDEAN.compare(vectors[target], vectors[scoreDoc.doc]), scoreDoc.score, 1e-6f);
+          }
+          if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0].doc == target) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+
+  // CAGRA only searches compressed datasets of sub-vectors of 2 or 4 dimensions
+  public void testCompressedPqDim() {
+    assertEquals(16, CuVSVectorsWriter.compressedPqDim(64, 0));
+    assertEquals(15, CuVSVectorsWriter.compressedPqDim(30, 0));
+    assertEquals(32, CuVSVectorsWriter.compressedPqDim(64, 32));
+    assertEquals(16, CuVSVectorsWriter.compressedPqDim(64, 16));
+    // the vectors cannot be compressed
+    assertEquals(0, CuVSVectorsWriter.compressedPqDim(31, 0));
+    assertEquals(0, CuVSVectorsWriter.compressedPqDim(64, 64));
+    assertEquals(0, CuVSVectorsWriter.compressedPqDim(64, 8));
+  }
+
+  // The compressed dataset is searched on the GPU, and refined against the raw vectors, so hits
+  // have exact scores, with sub-vectors of 4 dimensions, or of 2
+  public void testCompressedDataset() throws Exception {
+    int dims = random().nextBoolean() ? 64 : 30;
+    int numDocs = atLeast(2000);
+    float[][] vectors = new float[numDocs][];
+    var format =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.CAGRA)
+            .withCompressedDataset(true)
+            .build();
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir, newIndexWriterConfig().setCodec(TestUtil.alwaysKnnVectorsFormat(format)))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          int target = random().nextInt(numDocs);
+          var topDocs = r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+          for (var scoreDoc : topDocs.scoreDocs) {
+            assertEquals(
+                EUCLIDEAN.compare(vectors[target], vectors[scoreDoc.doc]), scoreDoc.score, 1e-6f);
+          }
+          if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0].doc == target) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+
+        // a filter accepting more documents than the exact search threshold is searched on the GPU
+        FixedBitSet evenDocs = new FixedBitSet(numDocs);
+        for (int doc = 0; doc < numDocs; doc += 2) {
+          evenDocs.set(doc);
+        }
+        int target = 2 * random().nextInt(numDocs / 2);
+        var topDocs = r.searchNearestVectors("f", vectors[target], 10, evenDocs, Integer.MAX_VALUE);
+        assertEquals(10, topDocs.scoreDocs.length);
+        for (var scoreDoc : topDocs.scoreDocs) {
+          assertTrue(evenDocs.get(scoreDoc.doc));
+          assertEquals(
+              EUCLIDEAN.compare(vectors[target], vectors[scoreDoc.doc]), scoreDoc.score, 1e-6f);
+        }
+      }
+    }
+  }
+
+  // The vectors of compressed datasets are split in sub-vectors of an even number of dimensions,
+  // so the datasets of fields of odd dimensions are not compressed, and searched as is
+  public void testCompressedDatasetOddDimensions() throws Exception {
+    var format =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.CAGRA)
+            .withCompressedDataset(true)
+            .build();
+    doTestUncompressedDataset(format, 31);
+  }
+
+  // The dataset of IVF-PQ indices of fields whose vectors cannot be split in pqDim sub-vectors of
+  // 2 or 4 dimensions is not compressed either
+  public void testIvfPqIndexUncompressedDimensions() throws Exception {
+    var format =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.IVF_PQ)
+            .withIvfPqParams(new IvfPqParams(64, 8, 8, 8))
+            .build();
+    // sub-vectors of 8 dimensions, or an odd number of dimensions
+    doTestUncompressedDataset(format, random().nextBoolean() ? 64 : 31);
+  }
+
+  private void doTestUncompressedDataset(CuVSVectorsFormat format, int dims) throws Exception {
+    int numDocs = atLeast(1000);
+    float[][] vectors = new float[numDocs][];
+    CuVSMessages messages = new CuVSMessages();
+    IndexWriterConfig iwc =
+        newIndexWriterConfig()
+            .setCodec(TestUtil.alwaysKnnVectorsFormat(format))
+            .setInfoStream(messages);
+    try (Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, iwc)) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+      }
+      w.forceMerge(1);
+      String uncompressed = "dataset of vectors of " + dims + " dimensions not compressed";
+      assertTrue(messages.count(uncompressed) > 0);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          int target = random().nextInt(numDocs);
+          var topDocs = r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+          for (var scoreDoc : topDocs.scoreDocs) {
+            assertEquals(
+                EUCLIDEAN.compare(vectors[target], vectors[scoreDoc.doc]), scoreDoc.score, 1e-5f);
+          }
+          if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0].doc == target) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+
+  // A filtered search scores the same hits the same, whether it is searched on the GPU or, for a
+  // selective filter, scored exactly on the CPU, whatever the similarity of the field
+  public void testGpuAndExactSearchScores() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(1000);
+    float[][] vectors = new float[numDocs][];
+    VectorSimilarityFunction similarity = randomSimilarity();
+    try (Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig())) {
+      for (int i = 0; i < numDocs; i++) {
+        // dot product requires unit vectors
+        vectors[i] = VectorUtil.l2normalize(randomVector(dims));
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], similarity));
+        w.addDocument(doc);
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        for (int i = 0; i < 10; i++) {
+          float[] target = VectorUtil.l2normalize(randomVector(dims));
+          var gpuTopDocs = r.searchNearestVectors("f", target, 10, null, Integer.MAX_VALUE);
+          assertEquals(10, gpuTopDocs.scoreDocs.length);
+          FixedBitSet hits = new FixedBitSet(numDocs);
+          Map<Integer, Float> gpuScores = new HashMap<>();
+          for (var scoreDoc : gpuTopDocs.scoreDocs) {
+            assertEquals(
+                similarity.compare(target, vectors[scoreDoc.doc]), scoreDoc.score, 1e-5f);
+            hits.set(scoreDoc.doc);
+            gpuScores.put(scoreDoc.doc, scoreDoc.score);
+          }
+          // the filter accepts fewer documents than the exact search threshold
+          var exactTopDocs = r.searchNearestVectors("f", target, 10, hits, Integer.MAX_VALUE);
+          assertEquals(10, exactTopDocs.scoreDocs.length);
+          for (var scoreDoc : exactTopDocs.scoreDocs) {
+            assertEquals(gpuScores.get(scoreDoc.doc), scoreDoc.score, 1e-5f);
+          }
+        }
+      }
+    }
+  }
+
+  // The Cagra index of merged segments is built from the merged vectors, with the graph degree of
+  // the format, with or without deletions
+  public void testMergeRebuildsCagraIndex() throws Exception {
+    int dims = 32;
+    int numSegments = 3;
+    int docsPerSegment = 500;
+    // not cuVS' default degrees
+    int intGraphDegree = 48;
+    int graphDegree = 24;
+    float[][] vectors = new float[numSegments * docsPerSegment][];
+    CuVSMessages messages = new CuVSMessages();
+    var format =
+        new CuVSVectorsFormat(
+            CuVSVectorsFormat.DEFAULT_WRITER_THREADS, intGraphDegree, graphDegree, IndexType.CAGRA);
+    IndexWriterConfig iwc =
+        newIndexWriterConfig()
+            .setCodec(TestUtil.alwaysKnnVectorsFormat(format))
+            .setInfoStream(messages);
+    try (Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, iwc)) {
+      for (int i = 0; i < vectors.length; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+        if ((i + 1) % docsPerSegment == 0) {
+          w.commit();
+        }
+      }
+      int created = messages.count("Cagra index created");
+      w.forceMerge(1);
+      assertTrue(messages.count("Cagra index created") > created);
+      assertSelfRecall(w, vectors, -1);
+      assertGraphDegree(w, graphDegree);
+
+      int deleted = random().nextInt(vectors.length);
+      w.deleteDocuments(new Term("id", Integer.toString(deleted)));
+      created = messages.count("Cagra index created");
+      w.forceMerge(1);
+      assertTrue(messages.count("Cagra index created") > created);
+      assertSelfRecall(w, vectors, deleted);
+      assertGraphDegree(w, graphDegree);
+    }
+  }
+
+  // Asserts the degree of the graph of the Cagra index of the only segment
+  private static void assertGraphDegree(IndexWriter w, int graphDegree) throws IOException {
+    try (DirectoryReader reader = DirectoryReader.open(w)) {
+      LeafReader r = getOnlyLeafReader(reader);
+      var fieldsReader =
+          (PerFieldKnnVectorsFormat.FieldsReader) ((CodecReader) r).getVectorReader();
+      var cuvsReader = (CuVSVectorsReader) fieldsReader.getFieldReader("f");
+      assertEquals(graphDegree, cuvsReader.cagraGraphDegree("f"));
+    }
+  }
+
+  // Records the messages of the cuvs component
+  private static class CuVSMessages extends InfoStream {
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void message(String component, String message) {
+      if (CUVS_COMPONENT.equals(component)) {
+        messages.add(message);
+      }
+    }
+
+    @Override
+    public boolean isEnabled(String component) {
+      return CUVS_COMPONENT.equals(component);
+    }
+
+    @Override
+    public void close() {}
+
+    int count(String prefix) {
+      return (int) messages.stream().filter(m -> m.startsWith(prefix)).count();
+    }
+  }
+
+  // Asserts that the vectors are mostly their own nearest neighbour, but the deleted one
+  private static void assertSelfRecall(IndexWriter w, float[][] vectors, int deleted)
+      throws Exception {
+    try (DirectoryReader reader = DirectoryReader.open(w)) {
+      LeafReader r = getOnlyLeafReader(reader);
+      int found = 0;
+      int numQueries = 20;
+      for (int i = 0; i < numQueries; i++) {
+        int target = random().nextInt(vectors.length);
+        if (target == deleted) {
+          target = (target + 1) % vectors.length;
+        }
+        var topDocs = r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+        if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0].score == 1f) {
+          found++;
+        }
+      }
+      assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      if (deleted >= 0) {
+        var topDocs = r.searchNearestVectors("f", vectors[deleted], 10, null, Integer.MAX_VALUE);
+        for (var scoreDoc : topDocs.scoreDocs) {
+          assertTrue(scoreDoc.score < 1f);
+        }
+      }
+    }
+  }
+
+  public void testConcurrentFieldBuilds() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(500);
+    String[] fields = {"f1", "f2", "f3"};
+    float[][][] vectors = new float[fields.length][numDocs][];
+    ExecutorService executor = Executors.newFixedThreadPool(fields.length);
+    var format = new CuVSVectorsFormat.Builder().withIndexBuildExecutor(executor).build();
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir, newIndexWriterConfig().setCodec(TestUtil.alwaysKnnVectorsFormat(format)))) {
+      for (int i = 0; i < numDocs; i++) {
+        Document doc = new Document();
+        for (int f = 0; f < fields.length; f++) {
+          vectors[f][i] = randomVector(dims);
+          doc.add(new KnnFloatVectorField(fields[f], vectors[f][i], EUCLIDEAN));
+        }
+        w.addDocument(doc);
+        if (random().nextInt(numDocs / 2) == 0) {
+          w.commit();
+        }
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        for (int f = 0; f < fields.length; f++) {
+          int target = random().nextInt(numDocs);
+          var topDocs =
+              r.searchNearestVectors(fields[f], vectors[f][target], 10, null, Integer.MAX_VALUE);
+          assertEquals(10, topDocs.scoreDocs.length);
+          assertEquals(target, topDocs.scoreDocs[0].doc);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  // The files written with concurrent field builds are the same as with sequential ones
+  public void testConcurrentFieldBuildsWriteSameFiles() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(200);
+    String[] fields = {"f1", "f2", "f3", "f4"};
+    float[][][] vectors = new float[fields.length][numDocs][];
+    for (int f = 0; f < fields.length; f++) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[f][i] = randomVector(dims);
+      }
+    }
+    // brute force indices are built deterministically, unlike Cagra graphs
+    var format =
+        new CuVSVectorsFormat(
+            CuVSVectorsFormat.DEFAULT_WRITER_THREADS,
+            CuVSVectorsFormat.DEFAULT_INTERMEDIATE_GRAPH_DEGREE,
+            CuVSVectorsFormat.DEFAULT_GRAPH_DEGREE,
+            IndexType.BRUTE_FORCE);
+    Map<String, byte[]> sequential = writeSegment(format, fields, vectors);
+
+    ExecutorService executor = Executors.newFixedThreadPool(fields.length);
+    var concurrentFormat =
+        new CuVSVectorsFormat.Builder()
+            .withIndexType(IndexType.BRUTE_FORCE)
+            .withIndexBuildExecutor(executor)
+            .build();
+    Map<String, byte[]> concurrent;
+    try {
+      concurrent = writeSegment(concurrentFormat, fields, vectors);
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(Set.of(CUVS_INDEX_EXT, CUVS_META_CODEC_EXT), sequential.keySet());
+    assertEquals(sequential.keySet(), concurrent.keySet());
+    for (String ext : sequential.keySet()) {
+      assertArrayEquals(ext, sequential.get(ext), concurrent.get(ext));
+    }
+  }
+
+  // Flushes the given vectors in a single segment, and returns the contents of its cuvs files, by
+  // extension, without their headers and footers, which hold the random id of the segment
+  private static Map<String, byte[]> writeSegment(
+      KnnVectorsFormat format, String[] fields, float[][][] vectors) throws IOException {
+    Map<String, byte[]> contents = new HashMap<>();
+    IndexWriterConfig iwc =
+        new IndexWriterConfig()
+            .setCodec(TestUtil.alwaysKnnVectorsFormat(format))
+            .setMergePolicy(NoMergePolicy.INSTANCE)
+            .setUseCompoundFile(false);
+    try (Directory dir = newDirectory()) {
+      try (IndexWriter w = new IndexWriter(dir, iwc)) {
+        for (int i = 0; i < vectors[0].length; i++) {
+          Document doc = new Document();
+          for (int f = 0; f < fields.length; f++) {
+            doc.add(new KnnFloatVectorField(fields[f], vectors[f][i], EUCLIDEAN));
+          }
+          w.addDocument(doc);
+        }
+        w.commit();
+      }
+      for (String file : dir.listAll()) {
+        String ext = IndexFileNames.getExtension(file);
+        if (CUVS_INDEX_EXT.equals(ext) || CUVS_META_CODEC_EXT.equals(ext)) {
+          try (IndexInput in = dir.openInput(file, IOContext.READONCE)) {
+            CodecUtil.readIndexHeader(in);
+            long length = in.length() - in.getFilePointer() - CodecUtil.footerLength();
+            byte[] bytes = new byte[Math.toIntExact(length)];
+            in.readBytes(bytes, 0, bytes.length);
+            assertNull(file, contents.put(ext, bytes));
+          }
+        }
+      }
+    }
+    return contents;
+  }
+
+  // The indices of all the fields are loaded by the executor when the reader is opened, and a
+  // failed load surfaces on the first search of its field
+  public void testParallelIndexLoading() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(200);
+    String[] fields = {"f1", "f2", "f3", "f4"};
+    float[][][] vectors = new float[fields.length][numDocs][];
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    CuVSVectorsFormat.setIndexLoading(executor, 2);
+    try (BaseDirectoryWrapper dir = newDirectory()) {
+      IndexWriterConfig iwc =
+          new IndexWriterConfig()
+              .setCodec(getCodec())
+              .setMergePolicy(NoMergePolicy.INSTANCE)
+              .setUseCompoundFile(false);
+      try (IndexWriter w = new IndexWriter(dir, iwc)) {
+        for (int i = 0; i < numDocs; i++) {
+          Document doc = new Document();
+          for (int f = 0; f < fields.length; f++) {
+            vectors[f][i] = randomVector(dims);
+            doc.add(new KnnFloatVectorField(fields[f], vectors[f][i], EUCLIDEAN));
+          }
+          w.addDocument(doc);
+        }
+        w.commit();
+      }
+      // the fields are written in order, so the first numpy record of the index file is in the
+      // indices of the first field, which then fail to load
+      corruptFirstNpyRecord(dir);
+      // the index file does not match its checksum anymore
+      dir.setCheckIndexOnClose(false);
+
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        LeafReader r = getOnlyLeafReader(reader);
+        var fieldsReader =
+            (PerFieldKnnVectorsFormat.FieldsReader) ((CodecReader) r).getVectorReader();
+        for (int f = 0; f < fields.length; f++) {
+          var cuvsReader = (CuVSVectorsReader) fieldsReader.getFieldReader(fields[f]);
+          if (f == 0) {
+            assertEquals(-1L, cuvsReader.indexLoadNanos(fields[f]));
+            float[] target = vectors[f][0];
+            expectThrows(
+                Exception.class,
+                () -> r.searchNearestVectors(fields[0], target, 10, null, Integer.MAX_VALUE));
+          } else {
+            assertTrue(fields[f], cuvsReader.indexLoadNanos(fields[f]) >= 0);
+            int target = random().nextInt(numDocs);
+            var topDocs =
+                r.searchNearestVectors(fields[f], vectors[f][target], 10, null, Integer.MAX_VALUE);
+            assertEquals(target, topDocs.scoreDocs[0].doc);
+          }
+        }
+      }
+    } finally {
+      CuVSVectorsFormat.setIndexLoading(null, CuVSVectorsFormat.DEFAULT_MAX_CONCURRENT_INDEX_LOADS);
+      executor.shutdownNow();
+    }
+  }
+
+  // A build waiting for admission holds no slot of the pool, which searches can lease meanwhile
+  public void testQueuedBuildHoldsNoSlot() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(100);
+    float[][] vectors = new float[numDocs][];
+    CuVSBuildScheduler scheduler = new CuVSBuildScheduler(Long.MAX_VALUE, 1);
+    CuVSResourcesPool pool = CuVSResourcesPool.create(1, CuVSResourcesPool.Placement.ROUND_ROBIN);
+    CuVSBuildScheduler defaultScheduler = CuVSVectorsFormat.buildScheduler();
+    CuVSVectorsFormat.setBuildScheduler(scheduler);
+    CuVSVectorsFormat.setResourcesPool(pool);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    try (Directory dir = newDirectory()) {
+      // a build that takes the only admission of the scheduler, until released
+      Future<?> running =
+          executor.submit(
+              () ->
+                  scheduler.run(
+                      CuVSBuildScheduler.Priority.MERGE,
+                      0L,
+                      () -> {
+                        started.countDown();
+                        try {
+                          release.await();
+                        } catch (InterruptedException e) {
+                          throw new ThreadInterruptedException(e);
+                        }
+                        return null;
+                      }));
+      started.await();
+      Future<?> flush =
+          executor.submit(
+              () -> {
+                IndexWriterConfig iwc =
+                    new IndexWriterConfig()
+                        .setCodec(getCodec())
+                        .setMergePolicy(NoMergePolicy.INSTANCE);
+                try (IndexWriter w = new IndexWriter(dir, iwc)) {
+                  for (int i = 0; i < numDocs; i++) {
+                    vectors[i] = randomVector(dims);
+                    Document doc = new Document();
+                    doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+                    w.addDocument(doc);
+                  }
+                  w.commit();
+                }
+                return null;
+              });
+      while (scheduler.queueDepth() == 0) {
+        Thread.sleep(1);
+      }
+      assertFalse(flush.isDone());
+      assertFalse(pool.isLeased(0));
+
+      release.countDown();
+      running.get();
+      flush.get();
+      assertFalse(pool.isLeased(0));
+      try (DirectoryReader reader = DirectoryReader.open(dir)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        int target = random().nextInt(numDocs);
+        var topDocs = r.searchNearestVectors("f", vectors[target], 10, null, Integer.MAX_VALUE);
+        assertEquals(target, topDocs.scoreDocs[0].doc);
+        assertEquals(1, pool.placedIndices(0));
+        // the pool is in use by the reader
+        expectThrows(IllegalStateException.class, pool::close);
+      }
+      assertEquals(0, pool.placedIndices(0));
+    } finally {
+      release.countDown();
+      executor.shutdown();
+      CuVSVectorsFormat.setBuildScheduler(defaultScheduler);
+      CuVSVectorsFormat.setResourcesPool(null);
+      pool.close();
+    }
+  }
+
+  // Overwrites the magic string of the first numpy record of the cuvs index file of the segment
+  private static void corruptFirstNpyRecord(Directory dir) throws IOException {
+    byte[] magic = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    for (String file : dir.listAll()) {
+      if (CUVS_INDEX_EXT.equals(IndexFileNames.getExtension(file))) {
+        byte[] bytes;
+        try (IndexInput in = dir.openInput(file, IOContext.READONCE)) {
+          bytes = new byte[Math.toIntExact(in.length())];
+          in.readBytes(bytes, 0, bytes.length);
+        }
+        for (int i = 0; i + magic.length <= bytes.length; i++) {
+          if (Arrays.equals(bytes, i, i + magic.length, magic, 0, magic.length)) {
+            bytes[i] = 0;
+            // rewritten underneath the test wrapper, which refuses to write a file twice
+            Directory delegate = FilterDirectory.unwrap(dir);
+            delegate.deleteFile(file);
+            try (IndexOutput out = delegate.createOutput(file, IOContext.DEFAULT)) {
+              out.writeBytes(bytes, bytes.length);
+            }
+            return;
+          }
+        }
+      }
+    }
+    fail("no numpy record found");
+  }
 }
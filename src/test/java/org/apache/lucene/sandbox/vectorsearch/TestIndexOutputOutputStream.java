@@ -83,7 +83,7 @@ public class TestIndexOutputOutputStream extends LuceneTestCase {
         while (i < data.length) {
           if (random.nextBoolean()) {
             int b = in.read();
-            assertEquals(data[i], b);
+            assertEquals(data[i] & 0xFF, b);
             i++;
           } else {
             int numBytes = random.nextInt(Math.min(data.length - i, 100));
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_INTERMEDIATE_GRAPH_DEGREE;
+import static org.apache.lucene.sandbox.vectorsearch.CuVSVectorsFormat.DEFAULT_WRITER_THREADS;
+
+import com.nvidia.cuvs.CagraSearchParams.SearchAlgo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.sandbox.vectorsearch.CuVSVectorsWriter.IndexType;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+
+/** Tests the IVF-Flat index, which is written and searched without a GPU. */
+public class TestIvfFlatIndex extends LuceneTestCase {
+
+  private static float[] randomVector(int dims) {
+    float[] v = new float[dims];
+    for (int i = 0; i < dims; i++) {
+      v[i] = random().nextFloat();
+    }
+    return v;
+  }
+
+  public void testListsAndSampleAreCapped() {
+    assertEquals(1, IvfFlatIndex.numLists(1));
+    assertEquals(10, IvfFlatIndex.numLists(100));
+    assertEquals(IvfFlatIndex.MAX_LISTS, IvfFlatIndex.numLists(Integer.MAX_VALUE));
+    assertEquals(100, IvfFlatIndex.sampleSize(100, 10));
+    assertEquals(10 * IvfFlatIndex.MAX_SAMPLES_PER_LIST, IvfFlatIndex.sampleSize(1_000_000, 10));
+    int count = Integer.MAX_VALUE;
+    assertEquals(
+        IvfFlatIndex.MAX_SAMPLE_SIZE, IvfFlatIndex.sampleSize(count, IvfFlatIndex.numLists(count)));
+  }
+
+  public void testSample() throws Exception {
+    int dims = 4;
+    int count = 1 + random().nextInt(1000);
+    List<float[]> vectors = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      vectors.add(randomVector(dims));
+    }
+    int numLists = IvfFlatIndex.numLists(count);
+    float[][] sample =
+        IvfFlatIndex.sample(
+            FloatVectorValues.fromFloats(vectors, dims),
+            numLists,
+            new Random(random().nextLong()));
+    assertEquals(IvfFlatIndex.sampleSize(count, numLists), sample.length);
+    // the sample holds copies of distinct vectors, in order of their ordinals
+    int prev = -1;
+    for (float[] vector : sample) {
+      int ord = -1;
+      for (int i = prev + 1; i < count && ord < 0; i++) {
+        if (Arrays.equals(vectors.get(i), vector)) {
+          ord = i;
+        }
+      }
+      assertTrue(ord > prev);
+      assertNotSame(vectors.get(ord), vector);
+      prev = ord;
+    }
+  }
+
+  public void testSearch() throws Exception {
+    int dims = 16;
+    int numDocs = atLeast(2000);
+    int k = 10;
+    float[][] vectors = new float[numDocs][];
+    var format =
+        new CuVSVectorsFormat(
+            DEFAULT_WRITER_THREADS,
+            DEFAULT_INTERMEDIATE_GRAPH_DEGREE,
+            DEFAULT_GRAPH_DEGREE,
+            IndexType.IVF_FLAT);
+    try (Directory dir = newDirectory();
+        IndexWriter w =
+            new IndexWriter(
+                dir, newIndexWriterConfig().setCodec(TestUtil.alwaysKnnVectorsFormat(format)))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+        if (random().nextInt(numDocs / 4) == 0) {
+          w.commit();
+        }
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        float[] target = randomVector(dims);
+
+        // probing all the lists is an exact search
+        var strategy = new CuVSSearchStrategy(0, 1, 0, SearchAlgo.AUTO, numDocs);
+        var collector = new PerLeafCuVSKnnCollector(k, Integer.MAX_VALUE, strategy);
+        r.searchNearestVectors("f", target, collector, null);
+        assertEquals(numDocs, collector.visitedCount());
+        TopDocs topDocs = collector.topDocs();
+
+        ScoreDoc[] expected = new ScoreDoc[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+          expected[i] = new ScoreDoc(i, EUCLIDEAN.compare(target, vectors[i]));
+        }
+        Arrays.sort(
+            expected,
+            Comparator.comparingDouble((ScoreDoc sd) -> -sd.score).thenComparingInt(sd -> sd.doc));
+        assertEquals(k, topDocs.scoreDocs.length);
+        for (int i = 0; i < k; i++) {
+          assertEquals(expected[i].doc, topDocs.scoreDocs[i].doc);
+        }
+
+        // a single list scores fewer vectors
+        strategy = new CuVSSearchStrategy(0, 1, 0, SearchAlgo.AUTO, 1);
+        collector = new PerLeafCuVSKnnCollector(k, Integer.MAX_VALUE, strategy);
+        r.searchNearestVectors("f", vectors[0], collector, null);
+        assertTrue(collector.visitedCount() < numDocs);
+        assertEquals(0, collector.topDocs().scoreDocs[0].doc);
+      }
+    }
+  }
+}
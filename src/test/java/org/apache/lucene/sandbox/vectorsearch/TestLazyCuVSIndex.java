@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.sandbox.vectorsearch.TestCuVSIndexCache.assertClosed;
+import static org.apache.lucene.sandbox.vectorsearch.TestCuVSIndexCache.countingLoader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.util.ThreadInterruptedException;
+
+/** Tests the lazy loading of indices, with indices without any native index, without a GPU. */
+public class TestLazyCuVSIndex extends LuceneTestCase {
+
+  public void testLoadsOnFirstUse() throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    try (var lazyIndex = new LazyCuVSIndex(countingLoader(loads))) {
+      assertEquals(0, loads.get());
+      assertFalse(lazyIndex.isLoaded());
+      assertEquals(-1L, lazyIndex.loadNanos());
+
+      CuVSIndex index = lazyIndex.get();
+      assertEquals(1, loads.get());
+      assertTrue(lazyIndex.isLoaded());
+      assertTrue(lazyIndex.loadNanos() >= 0);
+      // the index is loaded once
+      assertSame(index, lazyIndex.get());
+      assertEquals(1, loads.get());
+    }
+  }
+
+  public void testConcurrentFirstAccess() throws Exception {
+    int numThreads = 2 + random().nextInt(8);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    var lazyIndex =
+        new LazyCuVSIndex(
+            () -> {
+              loads.incrementAndGet();
+              // gives the other threads the time to wait for this load
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                throw new ThreadInterruptedException(e);
+              }
+              return new CuVSIndex(null, null, null);
+            });
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<CuVSIndex>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  start.await();
+                  return lazyIndex.get();
+                }));
+      }
+      start.countDown();
+      CuVSIndex index = futures.get(0).get();
+      for (Future<CuVSIndex> future : futures) {
+        assertSame(index, future.get());
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdown();
+      lazyIndex.close();
+    }
+  }
+
+  public void testCloseBeforeLoad() throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    var lazyIndex = new LazyCuVSIndex(countingLoader(loads));
+    lazyIndex.close();
+    assertTrue(lazyIndex.isClosed());
+    expectThrows(IllegalStateException.class, lazyIndex::get);
+    assertEquals(0, loads.get());
+    assertFalse(lazyIndex.isLoaded());
+  }
+
+  public void testCloseAfterLoad() throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    var lazyIndex = new LazyCuVSIndex(countingLoader(loads));
+    CuVSIndex index = lazyIndex.get();
+    lazyIndex.close();
+    assertTrue(lazyIndex.isClosed());
+    assertClosed(index);
+    // closing again is a no-op
+    lazyIndex.close();
+    assertClosed(index);
+  }
+
+  public void testFailingLoad() throws IOException {
+    AtomicInteger loads = new AtomicInteger();
+    var lazyIndex =
+        new LazyCuVSIndex(
+            () -> {
+              if (loads.incrementAndGet() == 1) {
+                throw new IOException("load failed");
+              }
+              return new CuVSIndex(null, null, null);
+            });
+    IOException e = expectThrows(IOException.class, lazyIndex::get);
+    assertEquals("load failed", e.getMessage());
+    assertFalse(lazyIndex.isLoaded());
+    assertEquals(-1L, lazyIndex.loadNanos());
+
+    // the failed load is not cached, the index is loaded again on the next use
+    CuVSIndex index = lazyIndex.get();
+    assertEquals(2, loads.get());
+    assertTrue(lazyIndex.isLoaded());
+    lazyIndex.close();
+    assertClosed(index);
+  }
+}
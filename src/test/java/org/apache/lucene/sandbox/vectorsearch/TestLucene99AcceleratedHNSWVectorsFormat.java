@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.index.VectorSimilarityFunction.EUCLIDEAN;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsReader;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.BaseKnnVectorsFormatTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+import org.junit.BeforeClass;
+
+public class TestLucene99AcceleratedHNSWVectorsFormat extends BaseKnnVectorsFormatTestCase {
+
+  @BeforeClass
+  public static void beforeClass() {
+    assumeTrue("cuvs is not supported", CuVSVectorsFormat.supported());
+  }
+
+  @Override
+  protected Codec getCodec() {
+    return TestUtil.alwaysKnnVectorsFormat(new Lucene99AcceleratedHNSWVectorsFormat());
+  }
+
+  // The segments are read, and searched on the CPU, by Lucene's own HNSW reader
+  public void testSearchWithLuceneHnswReader() throws Exception {
+    int dims = 32;
+    int numDocs = atLeast(500);
+    float[][] vectors = new float[numDocs][];
+    try (Directory dir = newDirectory();
+        IndexWriter w = new IndexWriter(dir, newIndexWriterConfig().setCodec(getCodec()))) {
+      for (int i = 0; i < numDocs; i++) {
+        vectors[i] = randomVector(dims);
+        Document doc = new Document();
+        doc.add(new KnnFloatVectorField("f", vectors[i], EUCLIDEAN));
+        w.addDocument(doc);
+      }
+      w.forceMerge(1);
+
+      try (DirectoryReader reader = DirectoryReader.open(w)) {
+        LeafReader r = getOnlyLeafReader(reader);
+        var vectorsReader = CuVSKnnFloatMultiVectorQuery.vectorsReader(r, "f");
+        assertTrue(vectorsReader instanceof Lucene99HnswVectorsReader);
+
+        // each vector is its own nearest neighbour
+        int found = 0;
+        int numQueries = 20;
+        for (int i = 0; i < numQueries; i++) {
+          int target = random().nextInt(numDocs);
+          var topDocs = r.searchNearestVectors("f", vectors[target], 1, null, Integer.MAX_VALUE);
+          if (topDocs.scoreDocs.length > 0 && topDocs.scoreDocs[0].doc == target) {
+            found++;
+          }
+        }
+        assertTrue("found only " + found + " of " + numQueries, found >= numQueries * 0.9);
+      }
+    }
+  }
+}
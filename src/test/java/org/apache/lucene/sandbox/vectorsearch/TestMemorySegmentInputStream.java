@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import static org.apache.lucene.util.ArrayUtil.copyOfSubArray;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+public class TestMemorySegmentInputStream extends LuceneTestCase {
+
+  private static byte[] writeRandom(MMapDirectory dir, String name) throws IOException {
+    byte[] data = new byte[Math.min(atLeast(10_000), 20_000)];
+    random().nextBytes(data);
+    try (var out = dir.createOutput(name, IOContext.DEFAULT)) {
+      out.writeBytes(data, data.length);
+    }
+    return data;
+  }
+
+  public void testReadSlice() throws IOException {
+    try (var dir = new MMapDirectory(createTempDir())) {
+      byte[] data = writeRandom(dir, "test");
+      Random random = random();
+      int offset = random.nextInt(data.length / 2);
+      int length = data.length / 2;
+      try (var indexIn = dir.openInput("test", IOContext.DEFAULT);
+          var slice = indexIn.slice("slice", offset, length)) {
+        var in = MemorySegmentInputStream.of(slice);
+        assertTrue(in instanceof MemorySegmentInputStream);
+        int i = 0;
+        while (i < length) {
+          if (random.nextBoolean()) {
+            assertEquals(data[offset + i] & 0xFF, in.read());
+            i++;
+          } else {
+            int numBytes = random.nextInt(Math.min(length - i, 100));
+            byte[] ba = new byte[numBytes];
+            assertEquals(numBytes, in.read(ba, 0, numBytes));
+            assertArrayEquals(copyOfSubArray(data, offset + i, offset + i + numBytes), ba);
+            i += numBytes;
+          }
+        }
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[2]));
+      }
+    }
+  }
+
+  public void testTransferTo() throws IOException {
+    try (var dir = new MMapDirectory(createTempDir())) {
+      byte[] data = writeRandom(dir, "test");
+      try (var indexIn = dir.openInput("test", IOContext.DEFAULT)) {
+        var in = MemorySegmentInputStream.of(indexIn);
+        assertEquals(0x100, in.skip(0x100));
+        var out = new ByteArrayOutputStream();
+        assertEquals(data.length - 0x100, in.transferTo(out));
+        assertArrayEquals(copyOfSubArray(data, 0x100, data.length), out.toByteArray());
+        assertEquals(-1, in.read());
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2025, NVIDIA CORPORATION.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.lucene.sandbox.vectorsearch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+public class TestPerLeafCuVSKnnCollector extends LuceneTestCase {
+
+  public void testKeepsTopK() {
+    Random random = random();
+    int k = random.nextInt(50) + 1;
+    int numHits = random.nextInt(500);
+    var collector = new PerLeafCuVSKnnCollector(k);
+
+    ScoreDoc[] all = new ScoreDoc[numHits];
+    for (int doc = 0; doc < numHits; doc++) {
+      // few distinct scores, to exercise the tie-break on doc id
+      all[doc] = new ScoreDoc(doc, random.nextInt(20) / 20f);
+      collector.incVisitedCount(1);
+      collector.collect(doc, all[doc].score);
+    }
+    Arrays.sort(
+        all,
+        Comparator.comparingDouble((ScoreDoc sd) -> -sd.score).thenComparingInt(sd -> sd.doc));
+
+    TopDocs topDocs = collector.topDocs();
+    assertEquals(numHits, topDocs.totalHits.value());
+    assertEquals(TotalHits.Relation.EQUAL_TO, topDocs.totalHits.relation());
+    assertEquals(Math.min(k, numHits), topDocs.scoreDocs.length);
+    for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+      assertEquals(all[i].doc, topDocs.scoreDocs[i].doc);
+      assertEquals(all[i].score, topDocs.scoreDocs[i].score, 0f);
+    }
+  }
+
+  public void testMinCompetitiveSimilarity() {
+    var collector = new PerLeafCuVSKnnCollector(2);
+    assertEquals(Float.NEGATIVE_INFINITY, collector.minCompetitiveSimilarity(), 0f);
+    assertTrue(collector.collect(0, 0.5f));
+    assertEquals(Float.NEGATIVE_INFINITY, collector.minCompetitiveSimilarity(), 0f);
+    assertTrue(collector.collect(1, 0.7f));
+    assertEquals(0.5f, collector.minCompetitiveSimilarity(), 0f);
+    assertFalse(collector.collect(2, 0.1f));
+    assertTrue(collector.collect(3, 0.9f));
+    assertEquals(0.7f, collector.minCompetitiveSimilarity(), 0f);
+  }
+
+  public void testVisitLimit() {
+    var collector = new PerLeafCuVSKnnCollector(10, 3, CuVSSearchStrategy.DEFAULT);
+    assertEquals(3, collector.visitLimit());
+    for (int doc = 0; doc < 3; doc++) {
+      assertFalse(collector.earlyTerminated());
+      collector.incVisitedCount(1);
+      collector.collect(doc, 1f);
+    }
+    assertTrue(collector.earlyTerminated());
+    TopDocs topDocs = collector.topDocs();
+    assertEquals(3, topDocs.totalHits.value());
+    assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, topDocs.totalHits.relation());
+  }
+
+  public void testZeroK() {
+    var collector = new PerLeafCuVSKnnCollector(0);
+    assertFalse(collector.collect(0, 1f));
+    assertEquals(0, collector.topDocs().scoreDocs.length);
+  }
+}